@@ -81,6 +81,8 @@ public class Annotations{
         boolean collide() default false;
         boolean spatial() default false;
         boolean mapping() default false;
+        /** If positive, spatial queries use a uniform grid with cells of this size instead of a quadtree. */
+        float cellSize() default 0f;
     }
 
     /** Indicates an entity definition. */
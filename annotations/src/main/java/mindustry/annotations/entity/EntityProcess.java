@@ -231,7 +231,7 @@ public class EntityProcess extends BaseProcessor{
 
                 boolean collides = an.collide();
                 groupDefs.add(new GroupDefinition(group.name().startsWith("g") ? group.name().substring(1) : group.name(),
-                    ClassName.bestGuess(packageName + "." + groupType), types, an.spatial(), an.mapping(), collides));
+                    ClassName.bestGuess(packageName + "." + groupType), types, an.spatial(), an.mapping(), collides, an.cellSize()));
             }
 
             ObjectMap<String, Selement> usedNames = new ObjectMap<>();
@@ -575,7 +575,7 @@ public class EntityProcess extends BaseProcessor{
                 groupsBuilder.addField(ParameterizedTypeName.get(
                     ClassName.bestGuess("mindustry.entities.EntityGroup"), itype), group.name, Modifier.PUBLIC, Modifier.STATIC);
 
-                groupInit.addStatement("$L = new $T<>($L.class, $L, $L)", group.name, groupc, itype, group.spatial, group.mapping);
+                groupInit.addStatement("$L = new $T<>($L.class, $L, $L, $Lf)", group.name, groupc, itype, group.spatial, group.mapping, group.cellSize);
             }
 
             //write the groups
@@ -919,15 +919,17 @@ public class EntityProcess extends BaseProcessor{
         final ClassName baseType;
         final Seq<Stype> components;
         final boolean spatial, mapping, collides;
+        final float cellSize;
         final ObjectSet<Selement> manualInclusions = new ObjectSet<>();
 
-        public GroupDefinition(String name, ClassName bestType, Seq<Stype> components, boolean spatial, boolean mapping, boolean collides){
+        public GroupDefinition(String name, ClassName bestType, Seq<Stype> components, boolean spatial, boolean mapping, boolean collides, float cellSize){
             this.baseType = bestType;
             this.components = components;
             this.name = name;
             this.spatial = spatial;
             this.mapping = mapping;
             this.collides = collides;
+            this.cellSize = cellSize;
         }
 
         @Override
@@ -15,6 +15,9 @@ public class Astar{
     private static final PQueue<Tile> queue = new PQueue<>(200 * 200 / 4, (a, b) -> 0);
     private static final IntFloatMap costs = new IntFloatMap();
     private static byte[][] rotations;
+    /** search ID of each tile the last time it was closed; avoids allocating and clearing a grid for every search */
+    private static int[] closed = {};
+    private static int search;
 
     public static Seq<Tile> pathfind(Tile from, Tile to, TileHueristic th, Boolf<Tile> passable){
         return pathfind(from.x, from.y, to.x, to.y, th, manhattan, passable);
@@ -30,7 +33,11 @@ public class Astar{
         Tile start = tiles.getn(startX, startY);
         Tile end = tiles.getn(endX, endY);
 
-        GridBits closed = new GridBits(tiles.width, tiles.height);
+        if(closed.length != tiles.width * tiles.height){
+            closed = new int[tiles.width * tiles.height];
+            search = 0;
+        }
+        int search = ++Astar.search;
 
         costs.clear();
         queue.clear();
@@ -48,15 +55,15 @@ public class Astar{
                 found = true;
                 break;
             }
-            closed.set(next.x, next.y);
+            closed[next.y * tiles.width + next.x] = search;
             for(Point2 point : Geometry.d4){
                 int newx = next.x + point.x, newy = next.y + point.y;
                 if(Structs.inBounds(newx, newy, tiles.width, tiles.height)){
                     Tile child = tiles.getn(newx, newy);
                     if(passable.get(child)){
                         float newCost = th.cost(next, child) + baseCost;
-                        if(!closed.get(child.x, child.y)){
-                            closed.set(child.x, child.y);
+                        if(closed[child.y * tiles.width + child.x] != search){
+                            closed[child.y * tiles.width + child.x] = search;
                             rotations[child.x][child.y] = child.relativeTo(next.x, next.y);
                             costs.put(child.pos(), newCost);
                             queue.add(child);
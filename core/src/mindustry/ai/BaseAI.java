@@ -90,7 +90,8 @@ public class BaseAI{
             }else{
                 var field = pathfinder.getField(state.rules.waveTeam, Pathfinder.costGround, Pathfinder.fieldCore);
 
-                int[][] weights = field.weights;
+                int[] weights = field.weights;
+                int width = field.width;
                 for(int i = 0; i < pathStep; i++){
                     int minCost = Integer.MAX_VALUE;
                     int cx = calcTile.x, cy = calcTile.y;
@@ -99,8 +100,8 @@ public class BaseAI{
                         int nx = cx + p.x, ny = cy + p.y;
 
                         Tile other = world.tile(nx, ny);
-                        if(other != null && weights[nx][ny] < minCost && weights[nx][ny] != -1){
-                            minCost = weights[nx][ny];
+                        if(other != null && weights[ny * width + nx] < minCost && weights[ny * width + nx] != -1){
+                            minCost = weights[ny * width + nx];
                             calcTile = other;
                             foundAny = true;
                         }
@@ -29,12 +29,19 @@ public class BlockIndexer{
 
     /** Set of all ores that are being scanned. */
     private final ObjectSet<Item> scanOres = new ObjectSet<>();
-    private final IntSet intSet = new IntSet();
     private final ObjectSet<Item> itemSet = new ObjectSet<>();
     /** Stores all ore quadtrants on the map. */
     private ObjectMap<Item, TileArray> ores = new ObjectMap<>();
-    /** Maps each team ID to a quarant. A quadrant is a grid of bits, where each bit is set if and only if there is a block of that team in that quadrant. */
-    private GridBits[] structQuadrants;
+    /** Maps each team ID to the buildings of that team in each quadrant. Buildings are placed in the quadrant of their center tile. */
+    private Seq<Building>[][] buildQuadrants;
+    /** Maps center tile positions to the building indexed there. */
+    private IntMap<Building> indexedBuilds = new IntMap<>();
+    /** Maps center tile positions to the team their building was indexed under. */
+    private IntIntMap indexedTeams = new IntIntMap();
+    /** Largest size of any indexed block. Queries are expanded by this, as buildings are only indexed by their center. */
+    private int maxIndexedSize = 1;
+    /** Number of indexed buildings of each team. */
+    private int[] buildCounts = new int[Team.all.length];
     /** Stores all damaged tile entities by team. */
     private ObjectSet<Building>[] damagedTiles = new ObjectSet[Team.all.length];
     /** All ores available on this map. */
@@ -77,11 +84,15 @@ public class BlockIndexer{
             allOres.clear();
             ores = null;
 
-            //create bitset for each team type that contains each quadrant
-            structQuadrants = new GridBits[Team.all.length];
+            buildQuadrants = new Seq[Team.all.length][];
+            indexedBuilds.clear();
+            indexedTeams.clear();
+            maxIndexedSize = 1;
+            buildCounts = new int[Team.all.length];
 
             for(Tile tile : world.tiles){
                 process(tile);
+                updateBuild(tile);
 
                 if(tile.build != null && tile.build.damaged()){
                     notifyTileDamaged(tile.build);
@@ -90,12 +101,6 @@ public class BlockIndexer{
                 if(tile.drop() != null) allOres.add(tile.drop());
             }
 
-            for(int x = 0; x < quadWidth(); x++){
-                for(int y = 0; y < quadHeight(); y++){
-                    updateQuadrant(world.tile(x * quadrantSize, y * quadrantSize));
-                }
-            }
-
             scanOres();
         });
     }
@@ -112,32 +117,22 @@ public class BlockIndexer{
             }
         }
         process(tile);
-        updateQuadrant(tile);
+        updateBuild(tile);
     }
 
     private TileArray[] getFlagged(Team team){
         return flagMap[team.id];
     }
 
-    private GridBits structQuadrant(Team t){
-        if(structQuadrants[t.id] == null){
-            structQuadrants[t.id] = new GridBits(Mathf.ceil(world.width() / (float)quadrantSize), Mathf.ceil(world.height() / (float)quadrantSize));
-        }
-        return structQuadrants[t.id];
+    /** @return the buildings of a team in a quadrant, or null if none have been indexed there yet. */
+    private @Nullable Seq<Building> buildQuadrant(Team team, int quadrantX, int quadrantY){
+        Seq<Building>[] quadrants = buildQuadrants == null ? null : buildQuadrants[team.id];
+        return quadrants == null ? null : quadrants[quadrantX + quadrantY * quadWidth()];
     }
 
-    /** Updates all the structure quadrants for a newly activated team. */
-    public void updateTeamIndex(Team team){
-        if(structQuadrants == null) return;
-
-        //go through every tile... ouch
-        for(Tile tile : world.tiles){
-            if(tile.team() == team){
-                int quadrantX = tile.x / quadrantSize;
-                int quadrantY = tile.y / quadrantSize;
-                structQuadrant(team).set(quadrantX, quadrantY);
-            }
-        }
+    /** @return the number of buildings a team has on the map. */
+    public int getBuildingCount(Team team){
+        return buildCounts[team.id];
     }
 
     /** @return whether this item is present on this map. */
@@ -181,26 +176,32 @@ public class BlockIndexer{
         return eachBlock(team.team(), team.getX(), team.getY(), range, pred, cons);
     }
 
-    public boolean eachBlock(Team team, float wx, float wy, float range, Boolf<Building> pred, Cons<Building> cons){
-        intSet.clear();
-
-        int tx = World.toTile(wx);
-        int ty = World.toTile(wy);
+    /** Iterates through all buildings with any tile within range of a position. If the team is null, buildings of all teams are included. */
+    public boolean eachBlock(@Nullable Team team, float wx, float wy, float range, Boolf<Building> pred, Cons<Building> cons){
+        if(buildQuadrants == null) return false;
 
-        int tileRange = (int)(range / tilesize + 1);
         boolean any = false;
+        float expand = maxIndexedSize * tilesize / 2f;
+        int minx = quadrant(wx - range - expand), miny = quadrant(wy - range - expand);
+        int maxx = Math.min(quadrant(wx + range + expand), quadWidth() - 1), maxy = Math.min(quadrant(wy + range + expand), quadHeight() - 1);
 
-        for(int x = -tileRange + tx; x <= tileRange + tx; x++){
-            for(int y = -tileRange + ty; y <= tileRange + ty; y++){
-                if(!Mathf.within(x * tilesize, y * tilesize, wx, wy, range)) continue;
+        for(int t = 0; t < activeTeams.size; t++){
+            Team other = activeTeams.items[t];
+            if(team != null && other != team) continue;
 
-                Building other = world.build(x, y);
+            for(int qx = minx; qx <= maxx; qx++){
+                for(int qy = miny; qy <= maxy; qy++){
+                    Seq<Building> builds = buildQuadrant(other, qx, qy);
+                    if(builds == null) continue;
 
-                if(other == null) continue;
+                    for(int i = 0; i < builds.size; i++){
+                        Building build = builds.items[i];
 
-                if((team == null || other.team == team) && pred.get(other) && intSet.add(other.pos())){
-                    cons.get(other);
-                    any = true;
+                        if(build.team == other && within(build, wx, wy, range) && pred.get(build)){
+                            cons.get(build);
+                            any = true;
+                        }
+                    }
                 }
             }
         }
@@ -270,26 +271,29 @@ public class BlockIndexer{
         Building closest = null;
         float dst = 0;
 
-        for(int rx = Math.max((int)((x - range) / tilesize / quadrantSize), 0); rx <= (int)((x + range) / tilesize / quadrantSize) && rx < quadWidth(); rx++){
-            for(int ry = Math.max((int)((y - range) / tilesize / quadrantSize), 0); ry <= (int)((y + range) / tilesize / quadrantSize) && ry < quadHeight(); ry++){
+        if(buildQuadrants == null || buildQuadrants[team.id] == null) return null;
 
-                if(!getQuad(team, rx, ry)) continue;
+        //buildings are indexed by their center, so expand the search by the largest possible building
+        float expand = maxIndexedSize * tilesize / 2f;
 
-                for(int tx = rx * quadrantSize; tx < (rx + 1) * quadrantSize && tx < world.width(); tx++){
-                    for(int ty = ry * quadrantSize; ty < (ry + 1) * quadrantSize && ty < world.height(); ty++){
-                        Building e = world.build(tx, ty);
+        for(int rx = quadrant(x - range - expand); rx <= quadrant(x + range + expand) && rx < quadWidth(); rx++){
+            for(int ry = quadrant(y - range - expand); ry <= quadrant(y + range + expand) && ry < quadHeight(); ry++){
+                Seq<Building> builds = buildQuadrant(team, rx, ry);
+                if(builds == null) continue;
 
-                        if(e == null || e.team != team || !pred.get(e) || !e.block.targetable || e.team == Team.derelict) continue;
+                for(int i = 0; i < builds.size; i++){
+                    Building e = builds.items[i];
 
-                        float bdst = e.dst(x, y) - e.hitSize() / 2f;
-                        if(bdst < range && (closest == null ||
-                        //this one is closer, and it is at least of equal priority
-                        (bdst < dst && (!usePriority || closest.block.priority.ordinal() <= e.block.priority.ordinal())) ||
-                        //priority is used, and new block has higher priority regardless of range
-                        (usePriority && closest.block.priority.ordinal() < e.block.priority.ordinal()))){
-                            dst = bdst;
-                            closest = e;
-                        }
+                    if(e.team != team || !e.block.targetable || e.team == Team.derelict || !pred.get(e)) continue;
+
+                    float bdst = e.dst(x, y) - e.hitSize() / 2f;
+                    if(bdst < range && (closest == null ||
+                    //this one is closer, and it is at least of equal priority
+                    (bdst < dst && (!usePriority || closest.block.priority.ordinal() <= e.block.priority.ordinal())) ||
+                    //priority is used, and new block has higher priority regardless of range
+                    (usePriority && closest.block.priority.ordinal() < e.block.priority.ordinal()))){
+                        dst = bdst;
+                        closest = e;
                     }
                 }
             }
@@ -399,40 +403,54 @@ public class BlockIndexer{
         }
     }
 
-    private void updateQuadrant(Tile tile){
-        if(structQuadrants == null) return;
+    /** Removes the building previously indexed at this tile, and indexes the current one if this is its center. */
+    private void updateBuild(Tile tile){
+        if(buildQuadrants == null) return;
 
-        //this quadrant is now 'dirty', re-scan the whole thing
-        int quadrantX = tile.x / quadrantSize;
-        int quadrantY = tile.y / quadrantSize;
+        int pos = tile.pos();
+        int quadrantX = tile.x / quadrantSize, quadrantY = tile.y / quadrantSize;
 
-        for(Team team : activeTeams){
-            GridBits bits = structQuadrant(team);
+        Building old = indexedBuilds.remove(pos);
+        if(old != null){
+            int oldTeam = indexedTeams.remove(pos, 0);
+            Seq<Building> builds = buildQuadrant(Team.get(oldTeam), quadrantX, quadrantY);
+            if(builds != null) builds.remove(old, true);
+            buildCounts[oldTeam]--;
+        }
 
-            //fast-set this quadrant to 'occupied' if the tile just placed is already of this team
-            if(tile.team() == team && tile.build != null && tile.block().targetable){
-                bits.set(quadrantX, quadrantY);
-                continue; //no need to process futher
-            }
+        if(tile.build != null && tile.isCenter()){
+            Team team = tile.team();
 
-            bits.set(quadrantX, quadrantY, false);
+            if(buildQuadrants[team.id] == null){
+                buildQuadrants[team.id] = new Seq[quadWidth() * quadHeight()];
+            }
 
-            outer:
-            for(int x = quadrantX * quadrantSize; x < world.width() && x < (quadrantX + 1) * quadrantSize; x++){
-                for(int y = quadrantY * quadrantSize; y < world.height() && y < (quadrantY + 1) * quadrantSize; y++){
-                    Building result = world.build(x, y);
-                    //when a targetable block is found, mark this quadrant as occupied and stop searching
-                    if(result != null && result.team == team){
-                        bits.set(quadrantX, quadrantY);
-                        break outer;
-                    }
-                }
+            Seq<Building>[] quadrants = buildQuadrants[team.id];
+            int index = quadrantX + quadrantY * quadWidth();
+            if(quadrants[index] == null){
+                quadrants[index] = new Seq<>(false, 16, Building.class);
             }
+
+            quadrants[index].add(tile.build);
+            indexedBuilds.put(pos, tile.build);
+            indexedTeams.put(pos, team.id);
+            buildCounts[team.id]++;
+            maxIndexedSize = Math.max(maxIndexedSize, tile.block().size);
         }
     }
 
-    private boolean getQuad(Team team, int quadrantX, int quadrantY){
-        return structQuadrant(team).get(quadrantX, quadrantY);
+    /** @return whether the center of any tile of this building is within range of a position. */
+    private static boolean within(Building build, float wx, float wy, float range){
+        int size = build.block.size, offset = -(size - 1) / 2;
+        int minx = build.tileX() + offset, miny = build.tileY() + offset;
+
+        //the closest tile of the building along each axis
+        int tx = Mathf.clamp(World.toTile(wx), minx, minx + size - 1), ty = Mathf.clamp(World.toTile(wy), miny, miny + size - 1);
+        return Mathf.within(tx * tilesize, ty * tilesize, wx, wy, range);
+    }
+
+    private static int quadrant(float coord){
+        return Math.max((int)(coord / tilesize / quadrantSize), 0);
     }
 
     private int quadWidth(){
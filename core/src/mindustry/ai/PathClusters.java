@@ -0,0 +1,389 @@
+package mindustry.ai;
+
+import arc.math.geom.*;
+import arc.struct.*;
+import mindustry.ai.Pathfinder.*;
+import mindustry.game.*;
+
+import java.util.*;
+
+/**
+ * Hierarchical path abstraction over the packed pathfinding tile data (HPA*).
+ * The map is split into square clusters. Adjacent clusters are connected by portals placed in the middle of every passable
+ * stretch of their shared border, and the in-cluster costs between the portals of a cluster are cached.
+ * Coarse routes are found by searching this portal graph, so their cost scales with map area / cluster size.
+ * Clusters are rebuilt lazily when a tile inside them changes. Main thread only.
+ */
+public class PathClusters{
+    /** Size of one cluster, in tiles. */
+    public static final int clusterSize = 16;
+    /** Maximum portals per cluster; one side can have at most clusterSize / 2 separate passable stretches. */
+    private static final int maxPortals = 64;
+    private static final int impassable = -1;
+
+    private final Pathfinder pathfinder;
+    /** dimensions in tiles and in clusters */
+    private int width, height, cwidth, cheight;
+    /** incremented every time a tile inside a cluster changes */
+    private int[] versions = {};
+    /** maps team and cost type to a cluster graph */
+    private Layer[][] layers = new Layer[0][0];
+
+    /** search state for the portal graph, indexed by node; stamped with the search ID instead of being cleared */
+    private int[] nodeCosts = {}, nodeParents = {}, nodeSearches = {};
+    private int search;
+    private final Heap open = new Heap(), local = new Heap();
+    /** in-cluster search costs, indexed by local tile position */
+    private final int[] localCosts = new int[clusterSize * clusterSize];
+    private final int[] endCosts = new int[maxPortals];
+    private final IntSeq nodes = new IntSeq();
+
+    public PathClusters(Pathfinder pathfinder){
+        this.pathfinder = pathfinder;
+    }
+
+    /** Resets all clusters for a map of the specified size. */
+    public void resize(int width, int height){
+        this.width = width;
+        this.height = height;
+        this.cwidth = (width + clusterSize - 1) / clusterSize;
+        this.cheight = (height + clusterSize - 1) / clusterSize;
+
+        int clusters = cwidth * cheight;
+        versions = new int[clusters];
+        layers = new Layer[Team.all.length][Pathfinder.costTypes.size];
+        //one extra node for the destination
+        nodeCosts = new int[clusters * maxPortals + 1];
+        nodeParents = new int[clusters * maxPortals + 1];
+        nodeSearches = new int[clusters * maxPortals + 1];
+        search = 0;
+    }
+
+    /** Marks the cluster containing a tile for rebuilding. */
+    public void tileChanged(int x, int y){
+        if(x < 0 || y < 0 || x >= width || y >= height) return;
+        versions[(y / clusterSize) * cwidth + x / clusterSize] ++;
+    }
+
+    /**
+     * Finds a coarse route between two tiles.
+     * @param out receives the packed positions of the route's waypoints: the start, every portal crossed and the destination.
+     * @return whether a route was found.
+     */
+    public boolean route(Team team, int costType, int startX, int startY, int endX, int endY, IntSeq out){
+        out.clear();
+        if(startX < 0 || startY < 0 || startX >= width || startY >= height || endX < 0 || endY < 0 || endX >= width || endY >= height) return false;
+
+        Layer layer = layer(team, costType);
+        int startCluster = cluster(startX, startY), endCluster = cluster(endX, endY);
+        int endNode = cwidth * cheight * maxPortals;
+
+        ensure(layer, startCluster);
+        ensure(layer, endCluster);
+
+        if(++search == 0){
+            Arrays.fill(nodeSearches, 0);
+            search = 1;
+        }
+        open.clear();
+
+        search(layer, startCluster, startY * width + startX, false);
+
+        //a route that never leaves the cluster
+        if(startCluster == endCluster){
+            int direct = localCosts[local(endX, endY)];
+            if(direct != impassable){
+                visit(endNode, direct, -1);
+                open.add(direct, endNode);
+            }
+        }
+
+        //connect the start to the portals of its cluster
+        IntSeq startPortals = layer.portals[startCluster];
+        for(int i = 0; i < startPortals.size; i++){
+            int cost = portalCost(startPortals.items[i]);
+            if(cost != impassable){
+                int node = startCluster * maxPortals + i;
+                visit(node, cost, -1);
+                open.add(cost + heuristic(startPortals.items[i], endX, endY), node);
+            }
+        }
+
+        //connect the portals of the destination's cluster to the destination
+        IntSeq endPortals = layer.portals[endCluster];
+        search(layer, endCluster, endY * width + endX, true);
+        for(int i = 0; i < endPortals.size; i++){
+            endCosts[i] = portalCost(endPortals.items[i]);
+        }
+
+        boolean found = false;
+        while(open.size > 0){
+            long entry = open.poll();
+            int node = (int)entry, f = (int)(entry >>> 32);
+
+            if(node == endNode){
+                found = true;
+                break;
+            }
+
+            int cluster = node / maxPortals, slot = node % maxPortals;
+            int tile = layer.portals[cluster].items[slot], cost = nodeCosts[node];
+
+            //skip stale entries
+            if(f != cost + heuristic(tile, endX, endY)) continue;
+
+            if(cluster == endCluster && endCosts[slot] != impassable){
+                relax(endNode, cost + endCosts[slot], node, 0);
+            }
+
+            //cross the border
+            int partner = layer.partners[cluster].items[slot];
+            int px = partner % width, py = partner / width, step = layer.cost.getCost(layer.team, pathfinder.tiles[partner]);
+            if(step != impassable){
+                int other = cluster(px, py);
+                ensure(layer, other);
+
+                IntSeq otherPortals = layer.portals[other], otherPartners = layer.partners[other];
+                for(int i = 0; i < otherPortals.size; i++){
+                    if(otherPortals.items[i] == partner && otherPartners.items[i] == tile){
+                        relax(other * maxPortals + i, cost + step, node, heuristic(partner, endX, endY));
+                        break;
+                    }
+                }
+            }
+
+            //move inside the cluster
+            IntSeq portals = layer.portals[cluster];
+            int[] distances = layer.distances[cluster];
+            for(int i = 0; i < portals.size; i++){
+                int dst = distances[slot * portals.size + i];
+                if(i != slot && dst != impassable){
+                    relax(cluster * maxPortals + i, cost + dst, node, heuristic(portals.items[i], endX, endY));
+                }
+            }
+        }
+
+        if(!found) return false;
+
+        //walk back from the destination
+        nodes.clear();
+        for(int node = nodeParents[endNode]; node != -1; node = nodeParents[node]){
+            nodes.add(node);
+        }
+
+        out.add(Point2.pack(startX, startY));
+        for(int i = nodes.size - 1; i >= 0; i--){
+            int node = nodes.items[i];
+            int tile = layer.portals[node / maxPortals].items[node % maxPortals];
+            out.add(Point2.pack(tile % width, tile / width));
+        }
+        out.add(Point2.pack(endX, endY));
+
+        return true;
+    }
+
+    private void visit(int node, int cost, int parent){
+        nodeSearches[node] = search;
+        nodeCosts[node] = cost;
+        nodeParents[node] = parent;
+    }
+
+    private void relax(int node, int cost, int parent, int heuristic){
+        if(nodeSearches[node] != search || cost < nodeCosts[node]){
+            visit(node, cost, parent);
+            open.add(cost + heuristic, node);
+        }
+    }
+
+    private int heuristic(int tile, int endX, int endY){
+        return Math.abs(tile % width - endX) + Math.abs(tile / width - endY);
+    }
+
+    private Layer layer(Team team, int costType){
+        if(layers[team.id][costType] == null){
+            layers[team.id][costType] = new Layer(team, Pathfinder.costTypes.get(costType), cwidth * cheight);
+        }
+        return layers[team.id][costType];
+    }
+
+    private int cluster(int x, int y){
+        return (y / clusterSize) * cwidth + x / clusterSize;
+    }
+
+    /** @return the index of a tile in the last in-cluster search. */
+    private int local(int x, int y){
+        return (y % clusterSize) * clusterSize + x % clusterSize;
+    }
+
+    /** @return the cost of a portal tile in the last in-cluster search. */
+    private int portalCost(int tile){
+        return localCosts[local(tile % width, tile / width)];
+    }
+
+    /** Rebuilds a cluster if any of its tiles changed since it was last built. */
+    private void ensure(Layer layer, int cluster){
+        if(layer.built[cluster] == versions[cluster]) return;
+
+        layer.built[cluster] = versions[cluster];
+
+        IntSeq portals = layer.portals[cluster], partners = layer.partners[cluster];
+        portals.clear();
+        partners.clear();
+
+        int x0 = (cluster % cwidth) * clusterSize, y0 = (cluster / cwidth) * clusterSize;
+        int x1 = Math.min(x0 + clusterSize, width) - 1, y1 = Math.min(y0 + clusterSize, height) - 1;
+
+        //both sides of a border scan the same tiles, so their portals always line up
+        if(y0 > 0) scanBorder(layer, portals, partners, x0, y0, 1, 0, x1 - x0 + 1, 0, -1);
+        if(x1 + 1 < width) scanBorder(layer, portals, partners, x1, y0, 0, 1, y1 - y0 + 1, 1, 0);
+        if(y1 + 1 < height) scanBorder(layer, portals, partners, x0, y1, 1, 0, x1 - x0 + 1, 0, 1);
+        if(x0 > 0) scanBorder(layer, portals, partners, x0, y0, 0, 1, y1 - y0 + 1, -1, 0);
+
+        int count = portals.size;
+        int[] distances = layer.distances[cluster];
+        if(distances == null || distances.length < count * count){
+            distances = layer.distances[cluster] = new int[count * count];
+        }
+
+        for(int i = 0; i < count; i++){
+            search(layer, cluster, portals.items[i], false);
+            for(int j = 0; j < count; j++){
+                distances[i * count + j] = portalCost(portals.items[j]);
+            }
+        }
+    }
+
+    /** Places a portal in the middle of every stretch of a border that is passable on both sides. */
+    private void scanBorder(Layer layer, IntSeq portals, IntSeq partners, int x, int y, int dx, int dy, int length, int ox, int oy){
+        int runStart = -1;
+        for(int i = 0; i <= length; i++){
+            boolean passable = false;
+            if(i < length){
+                int own = (y + dy * i) * width + x + dx * i, other = (y + dy * i + oy) * width + x + dx * i + ox;
+                passable = layer.cost.getCost(layer.team, pathfinder.tiles[own]) != impassable && layer.cost.getCost(layer.team, pathfinder.tiles[other]) != impassable;
+            }
+
+            if(passable && runStart == -1){
+                runStart = i;
+            }else if(!passable && runStart != -1){
+                int mid = (runStart + i - 1) / 2;
+                int tx = x + dx * mid, ty = y + dy * mid;
+                portals.add(ty * width + tx);
+                partners.add((ty + oy) * width + tx + ox);
+                runStart = -1;
+            }
+        }
+    }
+
+    /**
+     * Finds the costs from a tile to every other tile of a cluster without leaving it; results are stored in {@link #localCosts}.
+     * @param reverse whether to find the cost of moving from every tile to the source instead.
+     */
+    private void search(Layer layer, int cluster, int source, boolean reverse){
+        int x0 = (cluster % cwidth) * clusterSize, y0 = (cluster / cwidth) * clusterSize;
+        int x1 = Math.min(x0 + clusterSize, width), y1 = Math.min(y0 + clusterSize, height);
+        int[] tiles = pathfinder.tiles;
+
+        Arrays.fill(localCosts, impassable);
+        local.clear();
+
+        int sx = source % width, sy = source / width;
+        localCosts[local(sx, sy)] = 0;
+        local.add(0, source);
+
+        while(local.size > 0){
+            long entry = local.poll();
+            int tile = (int)entry, cost = (int)(entry >>> 32);
+            int x = tile % width, y = tile / width;
+
+            if(localCosts[local(x, y)] != cost) continue;
+
+            //moving onto a tile costs that tile's cost; in reverse, the tile being left is the one that is moved onto
+            int leave = reverse ? layer.cost.getCost(layer.team, tiles[tile]) : 0;
+            if(leave == impassable) continue;
+
+            for(Point2 point : Geometry.d4){
+                int nx = x + point.x, ny = y + point.y;
+                if(nx < x0 || ny < y0 || nx >= x1 || ny >= y1) continue;
+
+                int other = ny * width + nx;
+                int step = layer.cost.getCost(layer.team, tiles[other]);
+                if(step == impassable) continue;
+
+                int next = cost + (reverse ? leave : step), index = local(nx, ny);
+                if(localCosts[index] == impassable || next < localCosts[index]){
+                    localCosts[index] = next;
+                    local.add(next, other);
+                }
+            }
+        }
+    }
+
+    /** Portal graph of one team and cost type. */
+    static class Layer{
+        final Team team;
+        final PathCost cost;
+        /** version of each cluster at the time it was built */
+        final int[] built;
+        /** tile indices of the portals inside each cluster */
+        final IntSeq[] portals;
+        /** tile indices of the tiles across the border from each portal */
+        final IntSeq[] partners;
+        /** in-cluster costs between every pair of portals of a cluster, row-major; impassable if they are not connected */
+        final int[][] distances;
+
+        Layer(Team team, PathCost cost, int clusters){
+            this.team = team;
+            this.cost = cost;
+            this.built = new int[clusters];
+            this.portals = new IntSeq[clusters];
+            this.partners = new IntSeq[clusters];
+            this.distances = new int[clusters][];
+
+            Arrays.fill(built, -1);
+            for(int i = 0; i < clusters; i++){
+                portals[i] = new IntSeq(4);
+                partners[i] = new IntSeq(4);
+            }
+        }
+    }
+
+    /** Binary min-heap of values with integer priorities, packed as priority << 32 | value. */
+    static class Heap{
+        long[] items = new long[64];
+        int size;
+
+        void add(int priority, int value){
+            if(size == items.length) items = Arrays.copyOf(items, size * 2);
+
+            long entry = (long)priority << 32 | value;
+            int i = size++;
+            while(i > 0){
+                int parent = (i - 1) >> 1;
+                if(items[parent] <= entry) break;
+                items[i] = items[parent];
+                i = parent;
+            }
+            items[i] = entry;
+        }
+
+        long poll(){
+            long result = items[0], last = items[--size];
+            int i = 0;
+            while(true){
+                int child = i * 2 + 1;
+                if(child >= size) break;
+                if(child + 1 < size && items[child + 1] < items[child]) child ++;
+                if(items[child] >= last) break;
+                items[i] = items[child];
+                i = child;
+            }
+            items[i] = last;
+            return result;
+        }
+
+        void clear(){
+            size = 0;
+        }
+    }
+}
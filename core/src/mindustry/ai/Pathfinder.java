@@ -2,6 +2,7 @@ package mindustry.ai;
 
 import arc.*;
 import arc.func.*;
+import arc.math.*;
 import arc.math.geom.*;
 import arc.struct.*;
 import arc.util.*;
@@ -12,10 +13,14 @@ import mindustry.core.*;
 import mindustry.game.EventType.*;
 import mindustry.game.*;
 import mindustry.gen.*;
+import mindustry.net.Administration.*;
 import mindustry.world.*;
 import mindustry.world.blocks.storage.*;
 import mindustry.world.meta.*;
 
+import java.util.*;
+import java.util.concurrent.*;
+
 import static mindustry.Vars.*;
 
 public class Pathfinder implements Runnable{
@@ -61,14 +66,26 @@ public class Pathfinder implements Runnable{
     //maps team, cost, type to flow field
     Flowfield[][][] cache;
 
-    /** tile data, see PathTileStruct */
-    int[][] tiles = new int[0][0];
+    /** tile data, see PathTileStruct; row-major, indexed by y * wwidth + x */
+    int[] tiles = {};
+    /** dimensions of the tile data */
+    int wwidth, wheight;
+    /** coarse cluster graph over the tile data, for quick routes between arbitrary tiles */
+    final PathClusters clusters = new PathClusters(this);
     /** unordered array of path data for iteration only. DO NOT iterate or access this in the main thread. */
     Seq<Flowfield> threadList = new Seq<>(), mainList = new Seq<>();
     /** handles task scheduling on the update thread. */
     TaskQueue queue = new TaskQueue();
-    /** Current pathfinding thread */
+    /** Current pathfinding thread; schedules flow field updates onto the executor. */
     @Nullable Thread thread;
+    /** Work-stealing pool that updates independent flow fields in parallel. */
+    @Nullable ForkJoinPool executor;
+    /** Pending flow field updates of the current pass. Pathfinding thread only. */
+    Seq<Future<?>> futures = new Seq<>();
+    /** Indices of tiles that changed since the last pass. Must be synchronized on. */
+    final IntSeq changedTiles = new IntSeq();
+    /** Changed tiles that are being repaired in the current pass. Read-only while flow fields are updating. */
+    IntSeq repairTiles = new IntSeq();
     IntSeq tmpArray = new IntSeq();
 
     public Pathfinder(){
@@ -78,13 +95,19 @@ public class Pathfinder implements Runnable{
             stop();
 
             //reset and update internal tile array
-            tiles = new int[world.width()][world.height()];
+            wwidth = world.width();
+            wheight = world.height();
+            tiles = new int[wwidth * wheight];
+            clusters.resize(wwidth, wheight);
+            synchronized(changedTiles){
+                changedTiles.clear();
+            }
             threadList = new Seq<>();
             mainList = new Seq<>();
             clearCache();
 
             for(Tile tile : world.tiles){
-                tiles[tile.x][tile.y] = packTile(tile);
+                tiles[tile.y * wwidth + tile.x] = packTile(tile);
             }
 
             preloadPath(getField(state.rules.waveTeam, costGround, fieldCore));
@@ -136,30 +159,54 @@ public class Pathfinder implements Runnable{
     /** Starts or restarts the pathfinding thread. */
     private void start(){
         stop();
+
+        int threads = Config.pathfinderThreads.num();
+        if(threads <= 0) threads = Runtime.getRuntime().availableProcessors();
+
+        if(executor == null || executor.getParallelism() != threads){
+            if(executor != null) executor.shutdownNow();
+            executor = new ForkJoinPool(threads);
+        }
+
         thread = Threads.daemon(this);
     }
 
-    /** Stops the pathfinding thread. */
+    /** Stops the pathfinding thread and waits for its flow field updates to finish, so none of them outlive the current tile data. */
     private void stop(){
         if(thread != null){
+            //interrupting the thread cancels the pending updates of its current pass
             thread.interrupt();
+            try{
+                thread.join();
+            }catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
             thread = null;
         }
+
+        //updates that had already started are not interruptible, but each one is bounded by its time budget
+        if(executor != null){
+            executor.awaitQuiescence(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
         queue.clear();
     }
 
     /** Update a tile in the internal pathfinding grid.
-     * Causes a complete pathfinding reclaculation. Main thread only. */
+     * Changes are batched and repaired locally in the next pass of the pathfinding thread. Main thread only. */
     public void updateTile(Tile tile){
         if(net.client()) return;
 
-        int x = tile.x, y = tile.y;
+        synchronized(changedTiles){
+            tile.getLinkedTiles(t -> {
+                repackTile(t);
 
-        tile.getLinkedTiles(t -> {
-            if(Structs.inBounds(t.x, t.y, tiles)){
-                tiles[t.x][t.y] = packTile(t);
-            }
-        });
+                //neighbors store whether they are next to a solid or liquid tile
+                for(int i = 0; i < 4; i++){
+                    Tile other = t.nearby(i);
+                    if(other != null) repackTile(other);
+                }
+            });
+        }
 
         //can't iterate through array so use the map, which should not lead to problems
         for(Flowfield path : mainList){
@@ -171,11 +218,16 @@ public class Pathfinder implements Runnable{
             }
         }
 
-        queue.post(() -> {
-            for(Flowfield data : threadList){
-                updateTargets(data, x, y);
-            }
-        });
+    }
+
+    /** Updates the packed data of a tile and marks it for repair. */
+    private void repackTile(Tile tile){
+        if(tile.x < wwidth && tile.y < wheight){
+            int index = tile.y * wwidth + tile.x;
+            tiles[index] = packTile(tile);
+            changedTiles.add(index);
+            clusters.tileChanged(tile.x, tile.y);
+        }
     }
 
     /** Thread implementation. */
@@ -188,9 +240,27 @@ public class Pathfinder implements Runnable{
                 if(state.isPlaying()){
                     queue.run();
 
-                    //total update time no longer than maxUpdate
+                    //coalesce all tile changes since the last pass into one batch
+                    IntSeq repair = repairTiles;
+                    repair.clear();
+                    synchronized(changedTiles){
+                        repair.addAll(changedTiles);
+                        changedTiles.clear();
+                    }
+
+                    //total update time no longer than maxUpdate; fields are independent, so each worker gets its own share
+                    long budget = Math.min(maxUpdate, maxUpdate * executor.getParallelism() / Math.max(threadList.size, 1));
                     for(Flowfield data : threadList){
-                        updateFrontier(data, maxUpdate / threadList.size);
+                        futures.add(executor.submit(() -> {
+                            if(repair.size > 0) repair(data, repair);
+                            updateFrontier(data, budget);
+                        }));
+                    }
+
+                    try{
+                        awaitFields();
+                    }catch(InterruptedException e){
+                        return;
                     }
                 }
 
@@ -206,6 +276,52 @@ public class Pathfinder implements Runnable{
         }
     }
 
+    /**
+     * Waits for all flow field updates of this pass to finish. Pathfinding thread only.
+     * A field whose update failed may be half-updated, so its search is restarted from its targets.
+     */
+    private void awaitFields() throws InterruptedException{
+        try{
+            //updates are submitted in the order of the thread list
+            for(int i = 0; i < futures.size; i++){
+                try{
+                    futures.get(i).get();
+                }catch(ExecutionException e){
+                    Flowfield path = threadList.get(i);
+                    Log.err("Failed to update flow field of team @, restarting its search.", path.team);
+                    Log.err(e.getCause());
+                    updateTargets(path);
+                }
+            }
+        }catch(InterruptedException e){
+            for(Future<?> future : futures){
+                future.cancel(true);
+            }
+            throw e;
+        }finally{
+            futures.clear();
+        }
+    }
+
+    /** @return all flow fields that are currently being updated. Main thread only. */
+    public Seq<Flowfield> getFields(){
+        return mainList;
+    }
+
+    /**
+     * Finds a coarse route between two tiles over the cluster graph. Much cheaper than a flow field or A*, but only
+     * passes through the portals between clusters; use it to pick waypoints. Main thread only.
+     * @param out receives the packed positions of the route's waypoints, including the start and destination.
+     * @return whether a route was found.
+     */
+    public boolean getRoute(Team team, int costType, Tile from, Tile to, IntSeq out){
+        if(net.client()){
+            out.clear();
+            return false;
+        }
+        return clusters.route(team, costType, from.x, from.y, to.x, to.y, out);
+    }
+
     public Flowfield getField(Team team, int costType, int fieldType){
         if(cache[team.id][costType][fieldType] == null){
             Flowfield field = fieldTypes.get(fieldType).get();
@@ -248,8 +364,9 @@ public class Pathfinder implements Runnable{
             }
         }
 
-        int[][] values = path.weights;
-        int value = values[tile.x][tile.y];
+        int[] values = path.weights;
+        int width = path.width;
+        int value = values[tile.y * width + tile.x];
 
         Tile current = null;
         int tl = 0;
@@ -259,10 +376,12 @@ public class Pathfinder implements Runnable{
             Tile other = world.tile(dx, dy);
             if(other == null) continue;
 
-            if(values[dx][dy] < value && (current == null || values[dx][dy] < tl) && path.passable(dx, dy) &&
+            int weight = values[dy * width + dx];
+
+            if(weight < value && (current == null || weight < tl) && path.passable(dx, dy) &&
             !(point.x != 0 && point.y != 0 && (!path.passable(tile.x + point.x, tile.y) || !path.passable(tile.x, tile.y + point.y)))){ //diagonal corner trap
                 current = other;
-                tl = values[dx][dy];
+                tl = weight;
             }
         }
 
@@ -272,45 +391,118 @@ public class Pathfinder implements Runnable{
     }
 
     /**
-     * Clears the frontier, increments the search and sets up all flow sources.
-     * This only occurs for active teams.
+     * Repairs the weights around a batch of changed tiles instead of recalculating the whole field.
+     * Every tile whose weight was derived from a changed tile is invalidated, then re-seeded from its valid neighbors;
+     * the frontier then propagates the new costs outwards, so only the affected region is touched.
+     * If a target changed, the whole field is recalculated. Only called by the thread that updates this path.
      */
-    private void updateTargets(Flowfield path, int x, int y){
-        if(!Structs.inBounds(x, y, path.weights)) return;
+    private void repair(Flowfield path, IntSeq changed){
+        int[] weights = path.weights, searches = path.searches;
+        int width = path.width, height = path.height, search = path.search;
+        IntSeq stack = path.repairStack, invalid = path.repairInvalid;
 
-        if(path.weights[x][y] == 0){
-            //this was a previous target
-            path.frontier.clear();
-        }else if(!path.frontier.isEmpty()){
-            //skip if this path is processing
-            return;
+        synchronized(path.targets){
+            for(int i = 0; i < changed.size; i++){
+                int index = changed.items[i];
+
+                //a previous or new target changed, start over
+                if(weights[index] == 0 || path.targets.contains(Point2.pack(index % width, index / width))){
+                    updateTargets(path);
+                    return;
+                }
+            }
         }
 
-        //update cost of the tile TODO maybe only update the cost when it's not passable
-        path.weights[x][y] = path.cost.getCost(path.team, tiles[x][y]);
+        stack.clear();
+        invalid.clear();
 
-        //clear frontier to prevent contamination
-        path.frontier.clear();
+        for(int i = 0; i < changed.size; i++){
+            int index = changed.items[i];
+
+            //tiles not reached by the current search carry no valid weight
+            if(searches[index] != search) weights[index] = impassable;
+            searches[index] = 0;
+            stack.add(index);
+        }
+
+        //invalidate every tile whose weight depends on a changed tile
+        while(stack.size > 0){
+            int index = stack.pop();
+            int weight = weights[index];
+            weights[index] = impassable;
+            invalid.add(index);
+
+            if(weight == impassable) continue;
+
+            int x = index % width, y = index / width;
+            for(Point2 point : Geometry.d4){
+                int dx = x + point.x, dy = y + point.y;
+
+                if(dx < 0 || dy < 0 || dx >= width || dy >= height) continue;
+
+                int other = dy * width + dx;
+                if(searches[other] == search && weights[other] > 0 && weights[other] - path.cost.getCost(path.team, tiles[other]) == weight){
+                    searches[other] = 0;
+                    stack.add(other);
+                }
+            }
+        }
+
+        //seed invalidated tiles from the cheapest valid neighbor
+        for(int i = 0; i < invalid.size; i++){
+            int index = invalid.items[i];
+            int cost = path.cost.getCost(path.team, tiles[index]);
+
+            if(cost == impassable) continue;
+
+            int x = index % width, y = index / width, min = impassable;
+            for(Point2 point : Geometry.d4){
+                int dx = x + point.x, dy = y + point.y;
+
+                if(dx < 0 || dy < 0 || dx >= width || dy >= height) continue;
+
+                int other = dy * width + dx;
+                if(searches[other] == search && weights[other] != impassable && (min == impassable || weights[other] < min)){
+                    min = weights[other];
+                }
+            }
+
+            if(min != impassable){
+                weights[index] = min + cost;
+                searches[index] = search;
+                path.frontier.add(index, min + cost);
+            }
+        }
 
-        updateTargets(path);
+        if(path.searchStartTime == 0){
+            path.searchStartTime = Time.nanos();
+        }
     }
 
-    /** Increments the search and sets up flow sources. Does not change the frontier. */
+    /** Increments the search and sets up flow sources. Restarts the frontier from the targets. */
     private void updateTargets(Flowfield path){
 
-        //increment search, but do not clear the frontier
+        //the frontier is ordered by cost, so a new search must start from scratch
+        path.frontier.clear();
         path.search++;
+        path.searchStartTime = Time.nanos();
 
         synchronized(path.targets){
-            //add targets
-            for(int i = 0; i < path.targets.size; i++){
-                int pos = path.targets.get(i);
-                int tx = Point2.x(pos), ty = Point2.y(pos);
-
-                path.weights[tx][ty] = 0;
-                path.searches[tx][ty] = path.search;
-                path.frontier.addFirst(pos);
-            }
+            addTargets(path);
+        }
+    }
+
+    /** Adds all targets to the frontier with a cost of 0. */
+    private void addTargets(Flowfield path){
+        for(int i = 0; i < path.targets.size; i++){
+            int pos = path.targets.get(i);
+            int tx = Point2.x(pos), ty = Point2.y(pos);
+            if(tx < 0 || ty < 0 || tx >= path.width || ty >= path.height) continue;
+
+            int index = ty * path.width + tx;
+            path.weights[index] = 0;
+            path.searches[index] = path.search;
+            path.frontier.add(index, 0);
         }
     }
 
@@ -328,7 +520,8 @@ public class Pathfinder implements Runnable{
      */
     private void registerPath(Flowfield path){
         path.lastUpdateTime = Time.millis();
-        path.setup(tiles.length, tiles[0].length);
+        path.searchStartTime = Time.nanos();
+        path.setup(wwidth, wheight);
 
         threadList.add(path);
 
@@ -336,49 +529,50 @@ public class Pathfinder implements Runnable{
         Core.app.post(() -> mainList.add(path));
 
         //fill with impassables by default
-        for(int x = 0; x < world.width(); x++){
-            for(int y = 0; y < world.height(); y++){
-                path.weights[x][y] = impassable;
-            }
-        }
+        Arrays.fill(path.weights, impassable);
 
-        //add targets
-        for(int i = 0; i < path.targets.size; i++){
-            int pos = path.targets.get(i);
-            path.weights[Point2.x(pos)][Point2.y(pos)] = 0;
-            path.frontier.addFirst(pos);
-        }
+        addTargets(path);
     }
 
-    /** Update the frontier for a path. Pathfinding thread only. */
+    /** Update the frontier for a path. Pathfinding thread or executor only; a path is never updated by two threads at once. */
     private void updateFrontier(Flowfield path, long nsToRun){
         long start = Time.nanos();
 
-        while(path.frontier.size > 0 && (nsToRun < 0 || Time.timeSinceNanos(start) <= nsToRun)){
-            Tile tile = world.tile(path.frontier.removeLast());
-            if(tile == null || path.weights == null) return; //something went horribly wrong, bail
-            int cost = path.weights[tile.x][tile.y];
+        updateSearch(path, start, nsToRun);
 
-            //pathfinding overflowed for some reason, time to bail. the next block update will handle this, hopefully
-            if(path.frontier.size >= world.width() * world.height()){
-                path.frontier.clear();
-                return;
-            }
+        //record how long the search took to reach every tile
+        if(path.frontier.isEmpty() && path.searchStartTime != 0){
+            path.lastConvergeTime = Time.timeSinceNanos(path.searchStartTime);
+            path.searchStartTime = 0;
+        }
+    }
 
-            if(cost != impassable){
-                for(Point2 point : Geometry.d4){
+    private void updateSearch(Flowfield path, long start, long nsToRun){
+        int[] weights = path.weights, searches = path.searches;
+        int width = path.width, height = path.height, search = path.search;
+        Frontier frontier = path.frontier;
 
-                    int dx = tile.x + point.x, dy = tile.y + point.y;
+        while(!frontier.isEmpty() && (nsToRun < 0 || Time.timeSinceNanos(start) <= nsToRun)){
+            int index = frontier.poll();
+            int cost = frontier.cost;
 
-                    if(dx < 0 || dy < 0 || dx >= tiles.length || dy >= tiles[0].length) continue;
+            //a cheaper route to this tile has already been settled
+            if(weights[index] != cost) continue;
 
-                    int otherCost = path.cost.getCost(path.team, tiles[dx][dy]);
+            int x = index % width, y = index / width;
 
-                    if((path.weights[dx][dy] > cost + otherCost || path.searches[dx][dy] < path.search) && otherCost != impassable){
-                        path.frontier.addFirst(Point2.pack(dx, dy));
-                        path.weights[dx][dy] = cost + otherCost;
-                        path.searches[dx][dy] = (short)path.search;
-                    }
+            for(Point2 point : Geometry.d4){
+                int dx = x + point.x, dy = y + point.y;
+
+                if(dx < 0 || dy < 0 || dx >= width || dy >= height) continue;
+
+                int other = dy * width + dx;
+                int otherCost = path.cost.getCost(path.team, tiles[other]);
+
+                if((weights[other] > cost + otherCost || searches[other] < search) && otherCost != impassable){
+                    weights[other] = cost + otherCost;
+                    searches[other] = search;
+                    frontier.add(other, cost + otherCost);
                 }
             }
         }
@@ -421,6 +615,17 @@ public class Pathfinder implements Runnable{
         public void getPositions(IntSeq out){
             out.add(Point2.pack(World.toTile(position.getX()), World.toTile(position.getY())));
         }
+
+        /** Finds a coarse route from a tile to the current position of the target; see {@link Pathfinder#getRoute}. Main thread only. */
+        public boolean getRoute(Tile from, IntSeq out){
+            Tile to = world.tileWorld(position.getX(), position.getY());
+            int costType = costTypes.indexOf(cost, true);
+            if(to == null || costType == -1){
+                out.clear();
+                return false;
+            }
+            return pathfinder.getRoute(team, costType, from, to, out);
+        }
     }
 
     /**
@@ -435,36 +640,187 @@ public class Pathfinder implements Runnable{
         /** Function for calculating path cost. Set before using. */
         protected PathCost cost = costTypes.get(costGround);
 
-        /** costs of getting to a specific tile */
-        public int[][] weights;
+        /** dimensions of the field */
+        public int width, height;
+        /** costs of getting to a specific tile; row-major, indexed by y * width + x */
+        public int[] weights;
         /** search IDs of each position - the highest, most recent search is prioritized and overwritten */
-        public int[][] searches;
-        /** search frontier, these are Pos objects */
-        IntQueue frontier = new IntQueue();
+        public int[] searches;
+        /** search frontier of tile indices, ordered by cost */
+        final Frontier frontier = new Frontier();
+        /** scratch space for repairing changed tiles */
+        final IntSeq repairStack = new IntSeq(), repairInvalid = new IntSeq();
         /** all target positions; these positions have a cost of 0, and must be synchronized on! */
         final IntSeq targets = new IntSeq();
         /** current search ID */
         int search = 1;
         /** last updated time */
         long lastUpdateTime;
+        /** time at which the current search started, in nanoseconds; 0 if the search has converged */
+        volatile long searchStartTime;
+        /** how long the last completed search took to converge, in nanoseconds */
+        public volatile long lastConvergeTime;
         /** whether this flow field is ready to be used */
         boolean initialized;
 
         void setup(int width, int height){
-            this.weights = new int[width][height];
-            this.searches = new int[width][height];
-            this.frontier.ensureCapacity((width + height) * 3);
+            this.width = width;
+            this.height = height;
+            this.weights = new int[width * height];
+            this.searches = new int[width * height];
             this.initialized = true;
         }
 
+        public Team team(){
+            return team;
+        }
+
         protected boolean passable(int x, int y){
-            return cost.getCost(team, pathfinder.tiles[x][y]) != impassable;
+            return cost.getCost(team, pathfinder.tiles[y * width + x]) != impassable;
         }
 
         /** Gets targets to pathfind towards. This must run on the main thread. */
         protected abstract void getPositions(IntSeq out);
     }
 
+    /**
+     * Bucketed priority queue of tile indices with integer costs (Dial's algorithm).
+     * Each bucket holds the tiles of exactly one cost; buckets are reused in a ring that grows to fit the largest step cost.
+     * Entries that do not fit in the ring, such as repair seeds far from the current cost, wait in an unordered overflow list.
+     */
+    static class Frontier{
+        /** largest ring size; enough for every step cost of the built-in cost types */
+        static final int maxBuckets = 1 << 13;
+
+        IntSeq[] buckets = new IntSeq[64];
+        /** entries that do not fit in the ring, packed as cost << 32 | index */
+        final LongSeq overflow = new LongSeq();
+        /** lowest cost that may still be in the ring */
+        int current;
+        /** lowest cost in the overflow list; every entry in the ring is cheaper than this */
+        int limit = Integer.MAX_VALUE;
+        /** number of entries in the ring */
+        int ringSize;
+        /** cost of the last polled entry */
+        int cost;
+
+        void add(int index, int cost){
+            if(ringSize == 0){
+                //the ring is empty, so it can start anywhere
+                current = cost;
+            }else if(cost < current){
+                lower(cost);
+            }
+
+            int offset = cost - current;
+            if(offset >= buckets.length && offset < maxBuckets){
+                resize(offset + 1);
+            }
+
+            if(cost >= limit || offset >= buckets.length){
+                overflow.add((long)cost << 32 | index);
+                limit = Math.min(limit, cost);
+            }else{
+                int slot = cost & (buckets.length - 1);
+                if(buckets[slot] == null) buckets[slot] = new IntSeq();
+                buckets[slot].add(index);
+                ringSize ++;
+            }
+        }
+
+        /** Removes an entry with the lowest cost and stores its cost in {@link #cost}. The queue must not be empty. */
+        int poll(){
+            if(ringSize == 0) refill();
+
+            int mask = buckets.length - 1;
+            IntSeq bucket;
+            while((bucket = buckets[current & mask]) == null || bucket.size == 0){
+                current ++;
+            }
+
+            ringSize --;
+            cost = current;
+            return bucket.pop();
+        }
+
+        boolean isEmpty(){
+            return ringSize == 0 && overflow.size == 0;
+        }
+
+        void clear(){
+            for(IntSeq bucket : buckets){
+                if(bucket != null) bucket.clear();
+            }
+            overflow.clear();
+            ringSize = 0;
+            limit = Integer.MAX_VALUE;
+        }
+
+        /** Moves the start of the ring down to a lower cost. Entries that no longer fit are moved to the overflow list. */
+        private void lower(int cost){
+            int needed = current + buckets.length - cost;
+            if(needed > buckets.length && needed <= maxBuckets){
+                resize(needed);
+            }
+
+            int mask = buckets.length - 1;
+            for(int i = 0; i < buckets.length; i++){
+                IntSeq bucket = buckets[i];
+                if(bucket == null || bucket.size == 0) continue;
+
+                int bucketCost = current + ((i - current) & mask);
+                if(bucketCost - cost >= buckets.length){
+                    for(int j = 0; j < bucket.size; j++){
+                        overflow.add((long)bucketCost << 32 | bucket.items[j]);
+                    }
+                    limit = Math.min(limit, bucketCost);
+                    ringSize -= bucket.size;
+                    bucket.clear();
+                }
+            }
+
+            current = cost;
+        }
+
+        /** Moves the cheapest overflow entries into the empty ring. */
+        private void refill(){
+            current = limit;
+            limit = Integer.MAX_VALUE;
+
+            long[] items = overflow.items;
+            int kept = 0;
+            for(int i = 0; i < overflow.size; i++){
+                long entry = items[i];
+                int cost = (int)(entry >>> 32), index = (int)entry;
+
+                if(cost - current < buckets.length){
+                    int slot = cost & (buckets.length - 1);
+                    if(buckets[slot] == null) buckets[slot] = new IntSeq();
+                    buckets[slot].add(index);
+                    ringSize ++;
+                }else{
+                    items[kept++] = entry;
+                    limit = Math.min(limit, cost);
+                }
+            }
+            overflow.size = kept;
+        }
+
+        /** Grows the ring to hold at least the specified cost range. Every bucket holds a single cost, so they can be moved as a whole. */
+        private void resize(int range){
+            IntSeq[] last = buckets;
+            int oldMask = last.length - 1, newMask = Mathf.nextPowerOfTwo(range) - 1;
+            buckets = new IntSeq[newMask + 1];
+
+            for(int i = 0; i < last.length; i++){
+                if(last[i] == null) continue;
+                //restore the cost of this bucket relative to the lowest cost
+                int bucketCost = current + ((i - current) & oldMask);
+                buckets[bucketCost & newMask] = last[i];
+            }
+        }
+    }
+
     interface PathCost{
         int getCost(Team traversing, int tile);
     }
@@ -1,6 +1,7 @@
 package mindustry.async;
 
 import arc.*;
+import arc.func.*;
 import arc.struct.*;
 import mindustry.game.EventType.*;
 
@@ -24,6 +25,9 @@ public class AsyncCore{
         return thread;
     });
 
+    //pool for splitting up data-parallel work
+    private final ForkJoinPool workers = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
     public AsyncCore(){
         Events.on(WorldLoadEvent.class, e -> {
             complete();
@@ -52,7 +56,7 @@ public class AsyncCore{
             //submit all tasks
             for(AsyncProcess p : processes){
                 if(p.shouldProcess()){
-                    futures.add(executor.submit(p::process));
+                    futures.add(executor.submit(() -> process(p)));
                 }
             }
         }
@@ -69,6 +73,47 @@ public class AsyncCore{
         }
     }
 
+    /**
+     * Splits the range [0, size) into chunks and runs them on worker threads, blocking until all chunks are done.
+     * Chunks start at multiples of chunkSize. The calling thread runs the last chunk itself; small ranges are not split at all.
+     * May be called from several threads at once, but not from a worker thread.
+     */
+    public void parallel(int size, int chunkSize, Intc2 chunk){
+        if(size <= chunkSize || workers.getParallelism() <= 1){
+            if(size > 0) chunk.get(0, size);
+            return;
+        }
+
+        Seq<Future<?>> futures = new Seq<>(size / chunkSize);
+
+        int last = (size - 1) / chunkSize * chunkSize;
+        for(int from = 0; from < last; from += chunkSize){
+            int start = from, end = from + chunkSize;
+            futures.add(workers.submit(() -> chunk.get(start, end)));
+        }
+
+        chunk.get(last, size);
+
+        for(Future<?> future : futures){
+            try{
+                future.get();
+            }catch(Throwable t){
+                throw new RuntimeException(t);
+            }
+        }
+    }
+
+    private void process(AsyncProcess p){
+        p.process();
+
+        //fan out into sub-tasks, which may run in parallel with each other
+        parallel(p.tasks(), 1, (from, to) -> {
+            for(int i = from; i < to; i++){
+                p.process(i);
+            }
+        });
+    }
+
     private void complete(){
         //wait for all threads to stop processing
         for(Future future : futures){
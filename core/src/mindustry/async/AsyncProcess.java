@@ -14,6 +14,14 @@ public interface AsyncProcess{
     /** Async. Called in a separate thread. */
     default void process(){}
 
+    /** @return the number of sub-tasks to run after {@link #process()} finishes. */
+    default int tasks(){
+        return 0;
+    }
+
+    /** Async. Called once for each sub-task, possibly on several threads at once. */
+    default void process(int task){}
+
     /** Sync. Called in the end of the main loop. */
     default void end(){}
 
@@ -76,7 +76,18 @@ public class PhysicsProcess implements AsyncProcess{
             ref.body.y = ref.y;
         }
 
-        physics.update();
+        physics.prepare();
+    }
+
+    @Override
+    public int tasks(){
+        return physics == null ? 0 : layers;
+    }
+
+    @Override
+    public void process(int task){
+        //layers do not interact, so each one is solved on its own
+        physics.update(task);
     }
 
     @Override
@@ -125,13 +136,18 @@ public class PhysicsProcess implements AsyncProcess{
 
         private final QuadTree<PhysicsBody>[] trees = new QuadTree[layers];
         private final Seq<PhysicsBody> bodies = new Seq<>(false, 16, PhysicsBody.class);
-        private final Seq<PhysicsBody> seq = new Seq<>(PhysicsBody.class);
-        private final Rect rect = new Rect();
-        private final Vec2 vec = new Vec2();
+        //per-layer state, so layers can be updated in parallel
+        private final Seq<PhysicsBody>[] layerBodies = new Seq[layers], seqs = new Seq[layers];
+        private final Rect[] rects = new Rect[layers];
+        private final Vec2[] vecs = new Vec2[layers];
 
         public PhysicsWorld(Rect bounds){
             for(int i = 0; i < layers; i++){
                 trees[i] = new QuadTree<>(new Rect(bounds));
+                layerBodies[i] = new Seq<>(PhysicsBody.class);
+                seqs[i] = new Seq<>(PhysicsBody.class);
+                rects[i] = new Rect();
+                vecs[i] = new Vec2();
             }
         }
 
@@ -143,23 +159,47 @@ public class PhysicsProcess implements AsyncProcess{
             bodies.remove(body);
         }
 
+        /** Updates every layer in sequence. */
         public void update(){
+            prepare();
+
+            for(int i = 0; i < layers; i++){
+                update(i);
+            }
+        }
+
+        /** Sorts bodies into their layers. Must be called before updating any layer. */
+        public void prepare(){
             for(int i = 0; i < layers; i++){
-                trees[i].clear();
+                layerBodies[i].size = 0;
             }
 
             for(int i = 0; i < bodies.size; i++){
                 PhysicsBody body = bodies.items[i];
                 body.collided = false;
-                trees[body.layer].insert(body);
+                layerBodies[body.layer].add(body);
             }
+        }
 
-            for(int i = 0; i < bodies.size; i++){
-                PhysicsBody body = bodies.items[i];
+        /** Resolves collisions in a single layer. Different layers may be updated at the same time. */
+        public void update(int layer){
+            QuadTree<PhysicsBody> tree = trees[layer];
+            Seq<PhysicsBody> members = layerBodies[layer], seq = seqs[layer];
+            Rect rect = rects[layer];
+            Vec2 vec = vecs[layer];
+
+            tree.clear();
+
+            for(int i = 0; i < members.size; i++){
+                tree.insert(members.items[i]);
+            }
+
+            for(int i = 0; i < members.size; i++){
+                PhysicsBody body = members.items[i];
                 body.hitbox(rect);
 
                 seq.size = 0;
-                trees[body.layer].intersect(rect, seq);
+                tree.intersect(rect, seq);
 
                 for(int j = 0; j < seq.size; j++){
                     PhysicsBody other = seq.items[j];
@@ -14,6 +14,8 @@ import mindustry.maps.*;
 import mindustry.type.*;
 import mindustry.type.Weather.*;
 import mindustry.world.*;
+import mindustry.world.blocks.logic.*;
+import mindustry.world.blocks.power.*;
 
 import java.util.*;
 
@@ -94,6 +96,9 @@ public class Logic implements ApplicationListener{
         });
 
         Events.on(WorldLoadEvent.class, e -> {
+            //split graphs that lost buildings while loading, e.g. legacy blocks that were removed
+            PowerGraph.updateSplits();
+
             //enable infinite ammo for wave team by default
             state.rules.waveTeam.rules().infiniteAmmo = true;
 
@@ -193,6 +198,8 @@ public class Logic implements ApplicationListener{
 
         Groups.clear();
         Time.clear();
+        //queued graphs belong to the previous world
+        PowerGraph.clearSplits();
         Events.fire(new ResetEvent());
 
         //save settings on reset
@@ -366,6 +373,9 @@ public class Logic implements ApplicationListener{
             Core.settings.forceSave();
         }
 
+        //graphs also change while paused and in the editor
+        PowerGraph.updateSplits();
+
         if(state.isGame()){
             if(!net.client()){
                 state.enemies = Groups.unit.count(u -> u.team() == state.rules.waveTeam && u.type.isCounted);
@@ -409,6 +419,7 @@ public class Logic implements ApplicationListener{
                 Groups.weather.each(w -> state.envAttrs.add(w.weather.attrs, w.opacity));
 
                 Groups.update();
+                LogicBlock.updateProcessors();
             }
 
             if(!net.client() && !world.isInvalidMap() && !state.isEditor() && state.rules.canGameOver){
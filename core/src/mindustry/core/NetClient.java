@@ -26,7 +26,6 @@ import mindustry.world.*;
 import mindustry.world.modules.*;
 
 import java.io.*;
-import java.util.zip.*;
 
 import static mindustry.Vars.*;
 
@@ -50,9 +49,14 @@ public class NetClient implements ApplicationListener{
 
     /** List of entities that were removed, and need not be added while syncing. */
     private IntSet removed = new IntSet();
+    /** Received entity states, used as baselines for delta snapshots. */
+    private ReceivedStates received = new ReceivedStates();
     /** Byte stream for reading in snapshots. */
     private ReusableByteInStream byteStream = new ReusableByteInStream();
     private DataInputStream dataStream = new DataInputStream(byteStream);
+    /** Byte stream for reading the state of a single entity. */
+    private ReusableByteInStream entityStream = new ReusableByteInStream();
+    private DataInputStream entityData = new DataInputStream(entityStream);
     /** Packet handlers for custom types of messages. */
     private ObjectMap<String, Seq<Cons<String>>> customPacketHandlers = new ObjectMap<>();
 
@@ -119,7 +123,7 @@ public class NetClient implements ApplicationListener{
 
         net.handleClient(WorldStream.class, data -> {
             Log.info("Received world data: @ bytes.", data.stream.available());
-            NetworkIO.loadWorld(new InflaterInputStream(data.stream));
+            NetworkIO.loadWorld(data.stream);
 
             finishConnecting();
         });
@@ -363,6 +367,7 @@ public class NetClient implements ApplicationListener{
     public static void worldDataBegin(){
         Groups.clear();
         netClient.removed.clear();
+        netClient.received.clear();
         logic.reset();
         netClient.connecting = true;
 
@@ -392,15 +397,39 @@ public class NetClient implements ApplicationListener{
     }
 
     @Remote(variants = Variant.one, priority = PacketPriority.low, unreliable = true)
-    public static void entitySnapshot(short amount, short dataLen, byte[] data){
+    public static void entitySnapshot(int sequence, short amount, short dataLen, byte[] data){
         try{
             netClient.byteStream.setBytes(net.decompressSnapshot(data, dataLen));
             DataInputStream input = netClient.dataStream;
+            //packets without a sequence are full snapshots, which are read directly and not acknowledged
+            boolean delta = sequence >= 0;
+            //packets with missing baselines are not acknowledged, so the server falls back to full states
+            boolean complete = true;
 
             for(int j = 0; j < amount; j++){
                 int id = input.readInt();
                 byte typeID = input.readByte();
 
+                byte[] entityBytes = null;
+                if(delta){
+                    int length = input.readShort();
+                    int baseline = input.readInt();
+
+                    if(baseline < 0){
+                        entityBytes = new byte[length];
+                        input.readFully(entityBytes);
+                    }else{
+                        entityBytes = SnapshotBaselines.readDelta(input, length, netClient.received.get(id, baseline));
+                    }
+
+                    if(entityBytes == null){
+                        complete = false;
+                        continue;
+                    }
+
+                    netClient.received.add(id, sequence, entityBytes);
+                }
+
                 Syncc entity = Groups.sync.getByID(id);
                 boolean add = false, created = false;
 
@@ -420,7 +449,12 @@ public class NetClient implements ApplicationListener{
                 }
 
                 //read the entity
-                entity.readSync(Reads.get(input));
+                if(delta){
+                    netClient.entityStream.setBytes(entityBytes);
+                    entity.readSync(Reads.get(netClient.entityData));
+                }else{
+                    entity.readSync(Reads.get(input));
+                }
 
                 if(created){
                     //snap initial starting position
@@ -432,11 +466,27 @@ public class NetClient implements ApplicationListener{
                     netClient.addRemovedEntity(entity.id());
                 }
             }
+
+            if(delta && complete){
+                netClient.received.received(sequence);
+            }
         }catch(IOException e){
             throw new RuntimeException(e);
         }
     }
 
+    /** Removes entities that the server has stopped syncing to this client. They are re-created once they are synced again. */
+    @Remote(variants = Variant.one, priority = PacketPriority.low)
+    public static void hideEntities(int[] ids){
+        for(int id : ids){
+            Syncc entity = Groups.sync.getByID(id);
+            if(entity == null || entity == player || entity == player.unit()) continue;
+
+            entity.remove();
+            netClient.clearRemovedEntity(id);
+        }
+    }
+
     @Remote(variants = Variant.both, priority = PacketPriority.low, unreliable = true)
     public static void blockSnapshot(short amount, short dataLen, byte[] data){
         try{
@@ -540,6 +590,7 @@ public class NetClient implements ApplicationListener{
     private void reset(){
         net.setClientLoaded(false);
         removed.clear();
+        received.clear();
         timeoutTime = 0f;
         connecting = true;
         quietReset = false;
@@ -629,7 +680,8 @@ public class NetClient implements ApplicationListener{
             player.boosting, player.shooting, ui.chatfrag.shown(), control.input.isBuilding,
             requests,
             Core.camera.position.x, Core.camera.position.y,
-            Core.camera.width * viewScale, Core.camera.height * viewScale
+            Core.camera.width * viewScale, Core.camera.height * viewScale,
+            received.latest, received.acks()
             );
         }
 
@@ -35,11 +35,12 @@ import static mindustry.Vars.*;
 
 public class NetServer implements ApplicationListener{
     /** note that snapshots are compressed, so the max snapshot size here is above the typical UDP safe limit */
-    private static final int maxSnapshotSize = 800, timerBlockSync = 0;
+    private static final int maxSnapshotSize = 800, timerBlockSync = 0, timerEntitySync = 1;
     private static final float serverSyncTime = 12, blockSyncTime = 60 * 6;
     private static final FloatBuffer fbuffer = FloatBuffer.allocate(20);
     private static final Vec2 vector = new Vec2();
     private static final Rect viewport = new Rect();
+    private static final IntSeq hiddenEntities = new IntSeq();
     /** If a player goes away of their server-side coordinates by this distance, they get teleported back. */
     private static final float correctDist = tilesize * 12f;
 
@@ -66,7 +67,7 @@ public class NetServer implements ApplicationListener{
     };
 
     private boolean closing = false;
-    private Interval timer = new Interval();
+    private Interval timer = new Interval(2);
 
     private ReusableByteOutStream writeBuffer = new ReusableByteOutStream(127);
     private Writes outputBuffer = new Writes(new DataOutputStream(writeBuffer));
@@ -75,6 +76,18 @@ public class NetServer implements ApplicationListener{
     private ReusableByteOutStream syncStream = new ReusableByteOutStream();
     /** Data stream for writing player sync data to. */
     private DataOutputStream dataStream = new DataOutputStream(syncStream);
+    /** Stream for writing the full sync state of a single entity to. */
+    private ReusableByteOutStream entityStream = new ReusableByteOutStream();
+    private DataOutputStream entityData = new DataOutputStream(entityStream);
+    /** Sync state of each entity as of the last sync tick. Shared by all connections, and never modified after being written. */
+    private IntMap<byte[]> entityStates = new IntMap<>();
+    /** Compressed core item data as of the last sync tick. */
+    private byte[] coreData = {};
+    private short coreDataLength;
+    /** Map data shared by joining players. */
+    private final WorldDataCache worldCache = new WorldDataCache();
+    /** Whether shared state has been written during the current sync tick. */
+    private boolean sharedSnapshotWritten;
     /** Packet handlers for custom types of messages. */
     private ObjectMap<String, Seq<Cons2<Player, String>>> customPacketHandlers = new ObjectMap<>();
 
@@ -496,14 +509,39 @@ public class NetServer implements ApplicationListener{
     }
 
     public void sendWorldData(Player player){
-        ByteArrayOutputStream stream = new ByteArrayOutputStream();
-        DeflaterOutputStream def = new FastDeflaterOutputStream(stream);
-        NetworkIO.writeWorld(player, def);
-        WorldStream data = new WorldStream();
-        data.stream = new ByteArrayInputStream(stream.toByteArray());
-        player.con.sendStream(data);
-
-        debug("Packed @ bytes of world data.", stream.size());
+        NetConnection con = player.con;
+
+        //the client discards everything it knows about entities when it loads a world
+        con.baselines.clear();
+
+        //only the header is written for each player; the map is shared
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DeflaterOutputStream def = new FastDeflaterOutputStream(header);
+        NetworkIO.writeWorldHeader(player, def);
+
+        worldCache.get(map -> {
+            if(!con.isConnected()) return;
+
+            ByteArrayOutputStream stream = new ByteArrayOutputStream(4 + header.size() + map.length);
+            try{
+                DataOutputStream out = new DataOutputStream(stream);
+                out.writeInt(header.size());
+                header.writeTo(out);
+                out.write(map);
+            }catch(IOException e){
+                throw new RuntimeException(e);
+            }
+
+            WorldStream data = new WorldStream();
+            data.stream = new ByteArrayInputStream(stream.toByteArray());
+            con.sendStream(data);
+
+            debug("Packed @ bytes of world data.", stream.size());
+        }, e -> {
+            if(con.isConnected()){
+                con.kick("Failed to send world data: " + e.getMessage(), 0);
+            }
+        });
     }
 
     public void addPacketHandler(String type, Cons2<Player, String> handler){
@@ -567,11 +605,16 @@ public class NetServer implements ApplicationListener{
         Tile mining,
         boolean boosting, boolean shooting, boolean chatting, boolean building,
         @Nullable BuildPlan[] requests,
-        float viewX, float viewY, float viewWidth, float viewHeight
+        float viewX, float viewY, float viewWidth, float viewHeight,
+        int lastEntitySnapshot, byte[] entitySnapshotAcks
     ){
         NetConnection con = player.con;
         if(con == null || snapshotID < con.lastReceivedClientSnapshot) return;
 
+        if(entitySnapshotAcks != null){
+            con.baselines.acknowledge(lastEntitySnapshot, entitySnapshotAcks);
+        }
+
         //validate coordinates just in case
         if(invalid(x)) x = 0f;
         if(invalid(y)) y = 0f;
@@ -848,7 +891,8 @@ public class NetServer implements ApplicationListener{
         }
     }
 
-    public void writeEntitySnapshot(Player player) throws IOException{
+    /** Writes the parts of a snapshot that are the same for every connection. Must be called once per sync tick, before any entity snapshots are written. */
+    public void writeSharedSnapshot() throws IOException{
         syncStream.reset();
         int sum = state.teams.present.sum(t -> t.cores.size);
 
@@ -863,28 +907,111 @@ public class NetServer implements ApplicationListener{
 
         dataStream.close();
         byte[] stateBytes = syncStream.toByteArray();
+        coreDataLength = (short)stateBytes.length;
+        coreData = net.compressSnapshot(stateBytes);
+
+        //write each entity once; connections only pick which states to send
+        entityStates.clear();
+        for(Syncc entity : Groups.sync){
+            entityStream.reset();
+            entity.writeSync(Writes.get(entityData));
+            entityStates.put(entity.id(), entityStream.toByteArray());
+        }
+    }
 
+    /** Sends a snapshot to a player, using the state written by the last call to {@link #writeSharedSnapshot()}. */
+    public void writeEntitySnapshot(Player player) throws IOException{
         //write basic state data.
-        Call.stateSnapshot(player.con, state.wavetime, state.wave, state.enemies, state.serverPaused, state.gameOver, universe.seconds(), (short)stateBytes.length, net.compressSnapshot(stateBytes));
+        Call.stateSnapshot(player.con, state.wavetime, state.wave, state.enemies, state.serverPaused, state.gameOver, universe.seconds(), coreDataLength, coreData);
+
+        NetConnection con = player.con;
+        float margin = Config.snapshotViewMargin.num();
+        int farRate = Config.snapshotFarRate.num();
+        //units outside the view are only written on some snapshots
+        boolean syncFar = farRate > 0 && con.snapshotsSent++ % farRate == 0;
 
-        viewport.setSize(player.con.viewWidth, player.con.viewHeight).setCenter(player.con.viewX, player.con.viewY);
+        viewport.setSize(con.viewWidth + margin * 2f, con.viewHeight + margin * 2f).setCenter(con.viewX, con.viewY);
+
+        //swap the sets of units that are known to be in range of this client
+        IntSet lastSynced = con.syncedUnits;
+        con.syncedUnits = con.lastSyncedUnits;
+        con.lastSyncedUnits = lastSynced;
+        con.syncedUnits.clear();
+        hiddenEntities.clear();
+
+        boolean delta = Config.snapshotDelta.bool();
+        SnapshotBaselines baselines = con.baselines;
+        baselines.setDelta(delta);
+        baselines.beginTick();
 
         syncStream.reset();
 
-        int sent = 0;
+        int sent = 0, sequence = -1;
 
         for(Syncc entity : Groups.sync){
-            //write all entities now
-            dataStream.writeInt(entity.id()); //write id
+            //only units are filtered; the player's own unit is always synced
+            if(entity instanceof Unit unit && unit != player.unit() && !viewport.contains(unit.x, unit.y)){
+                if(!syncFar){
+                    if(lastSynced.contains(unit.id)){
+                        if(farRate <= 0){
+                            //units that can never be written are hidden, so they do not stay on the client as ghosts
+                            hiddenEntities.add(unit.id);
+                            con.baselines.remove(unit.id);
+                        }else{
+                            //the client still has this unit; keep track of it in case far units stop being synced
+                            con.syncedUnits.add(unit.id);
+                        }
+                    }
+                    continue;
+                }
+            }
+
+            int id = entity.id();
+            byte[] entityBytes = entityStates.get(id);
+
+            //added after the shared state was written
+            if(entityBytes == null) continue;
+
+            if(entity instanceof Unit){
+                con.syncedUnits.add(id);
+            }
+
+            //the client already has this state
+            if(delta && baselines.isCurrent(id, entityBytes)) continue;
+
+            dataStream.writeInt(id); //write id
             dataStream.writeByte(entity.classId()); //write type ID
-            entity.writeSync(Writes.get(dataStream)); //write entity
+
+            if(!delta){
+                //full snapshots have a negative sequence, and are read directly without a length or baseline
+                dataStream.write(entityBytes);
+            }else{
+                if(sent == 0){
+                    sequence = baselines.begin();
+                }
+
+                byte[] base = baselines.baseline(id);
+
+                dataStream.writeShort(entityBytes.length); //write length of full state
+
+                //write entity, either as changes from the acknowledged state or in full
+                if(base != null && base.length == entityBytes.length){
+                    dataStream.writeInt(baselines.baselineSequence(id));
+                    SnapshotBaselines.writeDelta(dataStream, base, entityBytes);
+                }else{
+                    dataStream.writeInt(-1);
+                    dataStream.write(entityBytes);
+                }
+
+                baselines.sent(id, entityBytes);
+            }
 
             sent++;
 
             if(syncStream.size() > maxSnapshotSize){
                 dataStream.close();
                 byte[] syncBytes = syncStream.toByteArray();
-                Call.entitySnapshot(player.con, (short)sent, (short)syncBytes.length, net.compressSnapshot(syncBytes));
+                Call.entitySnapshot(player.con, sequence, (short)sent, (short)syncBytes.length, net.compressSnapshot(syncBytes));
                 sent = 0;
                 syncStream.reset();
             }
@@ -894,9 +1021,12 @@ public class NetServer implements ApplicationListener{
             dataStream.close();
 
             byte[] syncBytes = syncStream.toByteArray();
-            Call.entitySnapshot(player.con, (short)sent, (short)syncBytes.length, net.compressSnapshot(syncBytes));
+            Call.entitySnapshot(player.con, sequence, (short)sent, (short)syncBytes.length, net.compressSnapshot(syncBytes));
         }
 
+        if(hiddenEntities.size > 0){
+            Call.hideEntities(player.con, hiddenEntities.toArray());
+        }
     }
 
     String fixName(String name){
@@ -950,6 +1080,10 @@ public class NetServer implements ApplicationListener{
 
     void sync(){
         try{
+            //all players are synced on the same tick, so entities only need to be written once
+            boolean syncEntities = timer.get(timerEntitySync, serverSyncTime);
+            sharedSnapshotWritten = false;
+
             Groups.player.each(p -> !p.isLocal(), player -> {
                 if(player.con == null || !player.con.isConnected()){
                     onDisconnect(player, "disappeared");
@@ -958,9 +1092,14 @@ public class NetServer implements ApplicationListener{
 
                 NetConnection connection = player.con;
 
-                if(!player.timer(0, serverSyncTime) || !connection.hasConnected) return;
+                if(!syncEntities || !connection.hasConnected) return;
 
                 try{
+                    if(!sharedSnapshotWritten){
+                        writeSharedSnapshot();
+                        sharedSnapshotWritten = true;
+                    }
+
                     writeEntitySnapshot(player);
                 }catch(IOException e){
                     e.printStackTrace();
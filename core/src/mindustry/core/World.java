@@ -25,6 +25,7 @@ import mindustry.type.Weather.*;
 import mindustry.world.*;
 import mindustry.world.blocks.environment.*;
 import mindustry.world.blocks.legacy.*;
+import mindustry.world.blocks.power.*;
 
 import static mindustry.Vars.*;
 
@@ -191,6 +192,8 @@ public class World{
      */
     public void beginMapLoad(){
         generating = true;
+        //graphs of the previous world must not be split against this one
+        PowerGraph.clearSplits();
     }
 
     /**
@@ -28,6 +28,10 @@ public class Damage{
     private static Building tmpBuilding;
     private static Unit tmpUnit;
     private static IntFloatMap damages = new IntFloatMap();
+    /** Maximum number of tile damage requests that have their rays cast together. */
+    private static final int maxDamageBatch = 64;
+    private static Seq<TileDamage> pendingDamage = new Seq<>(TileDamage.class), resolvingDamage = new Seq<>(TileDamage.class), freeDamage = new Seq<>();
+    private static int maxBlockSize;
 
     /** Creates a dynamic explosion based on specified parameters. */
     public static void dynamicExplosion(float x, float y, float flammability, float explosiveness, float power, float radius, boolean damage){
@@ -370,77 +374,162 @@ public class Damage{
         }
     }
 
+    /**
+     * Queues damage to buildings in a radius, which is blocked by buildings in the way.
+     * All requests made in a frame are resolved together at the start of the next frame, see {@link #resolveTileDamage()}.
+     */
     public static void tileDamage(Team team, int x, int y, float baseRadius, float damage){
+        if(pendingDamage.isEmpty()){
+            Core.app.post(Damage::resolveTileDamage);
+        }
 
-        Core.app.post(() -> {
+        TileDamage req = freeDamage.isEmpty() ? new TileDamage() : freeDamage.pop();
+        req.set(team, x, y, baseRadius, damage);
+        pendingDamage.add(req);
+    }
 
-            var in = world.build(x, y);
-            //spawned inside a multiblock. this means that damage needs to be dealt directly.
-            //why? because otherwise the building would absorb everything in one cell, which means much less damage than a nearby explosion.
-            //this needs to be compensated
-            if(in != null && in.team != team && in.block.size > 1 && in.health > damage){
-                //deal the damage of an entire side, to be equivalent with maximum 'standard' damage
-                in.damage(damage * Math.min((in.block.size), baseRadius * 0.45f));
-                //no need to continue with the explosion
-                return;
+    /**
+     * Resolves all queued tile damage, in the order it was requested.
+     * Consecutive requests that are too far apart to hit the same building have their rays cast in parallel, against the buildings as they were before any of them.
+     * Their damage is then applied one request at a time. If a building is destroyed, later requests are cast again, as its destruction may have changed other buildings.
+     * This gives the same results as resolving each request on its own.
+     */
+    private static void resolveTileDamage(){
+        //requests made while resolving, e.g. by destroyed buildings, are resolved in the next frame
+        Seq<TileDamage> requests = pendingDamage;
+        pendingDamage = resolvingDamage;
+        resolvingDamage = requests;
+
+        if(maxBlockSize == 0){
+            maxBlockSize = Math.max(content.blocks().max(b -> b.size).size, 1);
+        }
+
+        int index = 0;
+        while(index < requests.size){
+            int end = index + 1;
+            while(end < requests.size && end - index < maxDamageBatch && !overlaps(requests, index, end)){
+                end++;
             }
 
-            //cap radius to prevent lag
-            float radius = Math.min(baseRadius, 30), rad2 = radius * radius;
-            int rays = Mathf.ceil(radius * 2 * Mathf.pi);
-            double spacing = Math.PI * 2.0 / rays;
-            damages.clear();
-
-            //raycast from each angle
-            for(int i = 0; i <= rays; i++){
-                float dealt = 0f;
-                int startX = x;
-                int startY = y;
-                int endX = x + (int)(Math.cos(spacing * i) * radius), endY = y + (int)(Math.sin(spacing * i) * radius);
-
-                int xDist = Math.abs(endX - startX);
-                int yDist = -Math.abs(endY - startY);
-                int xStep = (startX < endX ? +1 : -1);
-                int yStep = (startY < endY ? +1 : -1);
-                int error = xDist + yDist;
-
-                while(startX != endX || startY != endY){
-                    var build = world.build(startX, startY);
-                    if(build != null && build.team != team){
-                        //damage dealt at circle edge
-                        float edgeScale = 0.6f;
-                        float mult = (1f-(Mathf.dst2(startX, startY, x, y) / rad2) + edgeScale) / (1f + edgeScale);
-                        float next = damage * mult - dealt;
-                        //register damage dealt
-                        int p = Point2.pack(startX, startY);
-                        damages.put(p, Math.max(damages.get(p), next));
-                        //register as hit
-                        dealt += build.health;
-
-                        if(next - dealt <= 0){
-                            break;
-                        }
-                    }
+            int from = index;
+            asyncCore.parallel(end - from, 1, (a, b) -> {
+                for(int i = a; i < b; i++){
+                    castRays(requests.items[from + i]);
+                }
+            });
+
+            for(index = from; index < end; ){
+                boolean destroyed = applyDamage(requests.items[index++]);
+                if(destroyed) break;
+            }
+        }
+
+        freeDamage.addAll(requests);
+        requests.clear();
+    }
 
-                    if(2 * error - yDist > xDist - 2 * error){
-                        error += yDist;
-                        startX += xStep;
-                    }else{
-                        error += xDist;
-                        startY += yStep;
+    /** @return whether the request at an index may hit a building that any request in [from, index) may also hit. */
+    private static boolean overlaps(Seq<TileDamage> requests, int from, int index){
+        TileDamage req = requests.items[index];
+        for(int i = from; i < index; i++){
+            TileDamage other = requests.items[i];
+            //a building may extend past the area of a request by its size
+            int dst = req.reach + other.reach + maxBlockSize * 2;
+            if(Math.abs(req.x - other.x) <= dst && Math.abs(req.y - other.y) <= dst){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Raycasts a tile damage request and records the damage for each tile hit. Does not modify anything but the request. */
+    private static void castRays(TileDamage req){
+        int x = req.x, y = req.y;
+        Team team = req.team;
+        float damage = req.damage;
+        req.clear();
+
+        var in = world.build(x, y);
+        //spawned inside a multiblock. this means that damage needs to be dealt directly.
+        //why? because otherwise the building would absorb everything in one cell, which means much less damage than a nearby explosion.
+        //this needs to be compensated
+        if(in != null && in.team != team && in.block.size > 1 && in.health > damage){
+            req.direct = in;
+            //no need to continue with the explosion
+            return;
+        }
+
+        //cap radius to prevent lag
+        float radius = Math.min(req.baseRadius, 30), rad2 = radius * radius;
+        int rays = Mathf.ceil(radius * 2 * Mathf.pi);
+        double spacing = Math.PI * 2.0 / rays;
+
+        //raycast from each angle
+        for(int i = 0; i <= rays; i++){
+            float dealt = 0f;
+            int startX = x;
+            int startY = y;
+            int endX = x + (int)(Math.cos(spacing * i) * radius), endY = y + (int)(Math.sin(spacing * i) * radius);
+
+            int xDist = Math.abs(endX - startX);
+            int yDist = -Math.abs(endY - startY);
+            int xStep = (startX < endX ? +1 : -1);
+            int yStep = (startY < endY ? +1 : -1);
+            int error = xDist + yDist;
+
+            while(startX != endX || startY != endY){
+                var build = world.build(startX, startY);
+                if(build != null && build.team != team){
+                    //damage dealt at circle edge
+                    float edgeScale = 0.6f;
+                    float mult = (1f-(Mathf.dst2(startX, startY, x, y) / rad2) + edgeScale) / (1f + edgeScale);
+                    float next = damage * mult - dealt;
+                    //register damage dealt
+                    req.add(Point2.pack(startX, startY), next);
+                    //register as hit
+                    dealt += build.health;
+
+                    if(next - dealt <= 0){
+                        break;
                     }
                 }
-            }
 
-            //apply damage
-            for(var e : damages){
-                int cx = Point2.x(e.key), cy = Point2.y(e.key);
-                var build = world.build(cx, cy);
-                if(build != null){
-                    build.damage(e.value);
+                if(2 * error - yDist > xDist - 2 * error){
+                    error += yDist;
+                    startX += xStep;
+                }else{
+                    error += xDist;
+                    startY += yStep;
                 }
             }
-        });
+        }
+    }
+
+    /** Applies the damage recorded for a request. @return whether any building was destroyed. */
+    private static boolean applyDamage(TileDamage req){
+        if(req.direct != null){
+            Building in = req.direct;
+            //deal the damage of an entire side, to be equivalent with maximum 'standard' damage
+            in.damage(req.damage * Math.min((in.block.size), req.baseRadius * 0.45f));
+            return in.health <= 0 || !in.isValid();
+        }
+
+        //damage is applied in the same order as it would be from this map
+        damages.clear();
+        for(int i = 0; i < req.positions.size; i++){
+            damages.put(req.positions.items[i], req.values.items[i]);
+        }
+
+        boolean destroyed = false;
+        for(var e : damages){
+            int cx = Point2.x(e.key), cy = Point2.y(e.key);
+            var build = world.build(cx, cy);
+            if(build != null){
+                build.damage(e.value);
+                destroyed |= build.health <= 0 || !build.isValid();
+            }
+        }
+        return destroyed;
     }
 
     private static void completeDamage(Team team, float x, float y, float radius, float damage){
@@ -461,4 +550,46 @@ public class Damage{
         float scaled = Mathf.lerp(1f - dist / radius, 1f, falloff);
         return damage * scaled;
     }
+
+    /** A queued request for {@link #tileDamage}, and the damage it deals to each tile once its rays are cast. */
+    private static class TileDamage{
+        Team team;
+        int x, y, reach;
+        float baseRadius, damage;
+
+        /** Multiblock that the request is inside of, which takes all the damage. */
+        @Nullable Building direct;
+        /** Tiles hit, in the order they were first hit, and the damage dealt to each. */
+        final IntSeq positions = new IntSeq();
+        final FloatSeq values = new FloatSeq();
+        final IntIntMap indices = new IntIntMap();
+
+        void set(Team team, int x, int y, float baseRadius, float damage){
+            this.team = team;
+            this.x = x;
+            this.y = y;
+            this.baseRadius = baseRadius;
+            this.damage = damage;
+            reach = Mathf.ceil(Math.min(baseRadius, 30));
+            clear();
+        }
+
+        void clear(){
+            direct = null;
+            positions.clear();
+            values.clear();
+            indices.clear();
+        }
+
+        void add(int pos, float value){
+            int index = indices.get(pos, -1);
+            if(index == -1){
+                indices.put(pos, positions.size);
+                positions.add(pos);
+                values.add(Math.max(0f, value));
+            }else{
+                values.items[index] = Math.max(values.items[index], value);
+            }
+        }
+    }
 }
@@ -14,16 +14,17 @@ public class EntityCollisions{
     private static final int r = 1;
     //move in 1-unit chunks
     private static final float seg = 1f;
+    //entities per parallel collision task
+    private static final int collisionChunk = 128;
 
     //tile collisions
     private Rect tmp = new Rect();
     private Vec2 vector = new Vec2();
-    private Vec2 l1 = new Vec2();
     private Rect r1 = new Rect();
     private Rect r2 = new Rect();
 
-    //entity collisions
-    private Seq<Hitboxc> arrOut = new Seq<>();
+    //entity collisions, one per parallel chunk
+    private Seq<CollisionChunk> chunks = new Seq<>(CollisionChunk.class);
 
     public void moveCheck(Hitboxc entity, float deltax, float deltay, SolidPred solidCheck){
         if(!solidCheck.solid(entity.tileX(), entity.tileY())){
@@ -116,13 +117,8 @@ public class EntityCollisions{
 
     @SuppressWarnings("unchecked")
     public <T extends Hitboxc> void updatePhysics(EntityGroup<T> group){
-        QuadTree tree = group.tree();
-        tree.clear();
-
-        group.each(s -> {
-            s.updateLastPosition();
-            tree.insert(s);
-        });
+        group.each(Hitboxc::updateLastPosition);
+        group.buildIndex();
     }
 
     public static boolean legsSolid(int x, int y){
@@ -140,9 +136,11 @@ public class EntityCollisions{
         return tile == null || tile.solid();
     }
 
-    private void checkCollide(Hitboxc a, Hitboxc b){
-        a.hitbox(this.r1);
-        b.hitbox(this.r2);
+    /** Swept hitbox test between two entities. Does not call any collision handlers; safe to call from several threads with separate chunks. */
+    private boolean checkCollide(Hitboxc a, Hitboxc b, CollisionChunk chunk){
+        Rect r1 = chunk.r1, r2 = chunk.r2;
+        a.hitbox(r1);
+        b.hitbox(r2);
 
         r1.x += (a.lastX() - a.getX());
         r1.y += (a.lastY() - a.getY());
@@ -154,15 +152,9 @@ public class EntityCollisions{
         float vbx = b.getX() - b.lastX();
         float vby = b.getY() - b.lastY();
 
-        if(a != b && a.collides(b)){
-            l1.set(a.getX(), a.getY());
-            boolean collide = r1.overlaps(r2) || collide(r1.x, r1.y, r1.width, r1.height, vax, vay,
-            r2.x, r2.y, r2.width, r2.height, vbx, vby, l1);
-            if(collide){
-                a.collision(b, l1.x, l1.y);
-                b.collision(a, l1.x, l1.y);
-            }
-        }
+        chunk.l1.set(a.getX(), a.getY());
+        return r1.overlaps(r2) || collide(r1.x, r1.y, r1.width, r1.height, vax, vay,
+        r2.x, r2.y, r2.width, r2.height, vbx, vby, chunk.l1);
     }
 
     private boolean collide(float x1, float y1, float w1, float h1, float vx1, float vy1,
@@ -211,30 +203,93 @@ public class EntityCollisions{
         }
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * Finds and handles collisions of every entity in a group.
+     * Candidate pairs and swept tests are computed in parallel; collision handlers then run on this thread,
+     * in group order and in the order candidates were found, so the results are deterministic.
+     */
     public <T extends Hitboxc> void collide(EntityGroup<T> groupa){
-        groupa.each(solid -> {
-            solid.hitbox(r1);
-            r1.x += (solid.lastX() - solid.getX());
-            r1.y += (solid.lastY() - solid.getY());
-
-            solid.hitbox(r2);
-            r2.merge(r1);
+        int size = groupa.size();
+        int chunkCount = (size + collisionChunk - 1) / collisionChunk;
+        while(chunks.size < chunkCount){
+            chunks.add(new CollisionChunk());
+        }
 
-            arrOut.clear();
+        //units have moved this frame; capture their hitboxes so that the parallel tasks only read flat arrays
+        state.teams.snapshotUnits();
 
-            //get all targets based on what entity wants to collide with
-            solid.getCollisions(tree -> tree.intersect(r2, arrOut));
+        asyncCore.parallel(size, collisionChunk, (from, to) -> {
+            CollisionChunk chunk = chunks.get(from / collisionChunk);
+            chunk.clear();
 
-            for(Hitboxc sc : arrOut){
-                sc.hitbox(r1);
-                if(r2.overlaps(r1)){
-                    checkCollide(solid, sc);
-                    //break out of loop when this object hits something
-                    if(!solid.isAdded()) return;
-                }
+            for(int i = from; i < to; i++){
+                findCollisions(groupa.index(i), chunk);
             }
         });
+
+        for(int c = 0; c < chunkCount; c++){
+            CollisionChunk chunk = chunks.items[c];
+
+            for(int i = 0; i < chunk.sources.size; i++){
+                Hitboxc a = chunk.sources.items[i], b = chunk.targets.items[i];
+
+                //skip the remaining hits once this object is removed
+                if(!a.isAdded() || !a.collides(b)) continue;
+
+                float x = chunk.positions.items[i * 2], y = chunk.positions.items[i * 2 + 1];
+                a.collision(b, x, y);
+                b.collision(a, x, y);
+            }
+
+            chunk.clear();
+        }
+    }
+
+    /** Records every entity whose swept hitbox overlaps that of the specified entity. */
+    private void findCollisions(Hitboxc solid, CollisionChunk chunk){
+        Rect r1 = chunk.r1, bounds = chunk.bounds;
+        Seq<Hitboxc> candidates = chunk.candidates;
+
+        solid.hitbox(r1);
+        r1.x += (solid.lastX() - solid.getX());
+        r1.y += (solid.lastY() - solid.getY());
+
+        solid.hitbox(bounds);
+        bounds.merge(r1);
+
+        candidates.clear();
+
+        //get all targets based on what entity wants to collide with
+        solid.getCollisions(grid -> grid.intersectSnapshot(bounds, candidates));
+
+        for(int i = 0; i < candidates.size; i++){
+            Hitboxc sc = candidates.items[i];
+            if(sc == solid) continue;
+
+            sc.hitbox(r1);
+            if(bounds.overlaps(r1) && checkCollide(solid, sc, chunk)){
+                chunk.sources.add(solid);
+                chunk.targets.add(sc);
+                chunk.positions.add(chunk.l1.x, chunk.l1.y);
+            }
+        }
+    }
+
+    /** Scratch space and results of one parallel collision task. */
+    private static class CollisionChunk{
+        final Rect r1 = new Rect(), r2 = new Rect(), bounds = new Rect();
+        final Vec2 l1 = new Vec2();
+        final Seq<Hitboxc> candidates = new Seq<>(Hitboxc.class);
+        /** colliding pairs in the order they were found, with hit positions packed as x, y */
+        final Seq<Hitboxc> sources = new Seq<>(Hitboxc.class), targets = new Seq<>(Hitboxc.class);
+        final FloatSeq positions = new FloatSeq();
+
+        void clear(){
+            candidates.clear();
+            sources.clear();
+            targets.clear();
+            positions.clear();
+        }
     }
 
     public interface SolidPred{
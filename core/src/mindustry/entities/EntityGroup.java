@@ -5,6 +5,7 @@ import arc.func.*;
 import arc.math.geom.*;
 import arc.struct.*;
 import arc.util.*;
+import mindustry.entities.SpatialIndex.*;
 import mindustry.gen.*;
 
 import java.util.*;
@@ -20,8 +21,10 @@ public class EntityGroup<T extends Entityc> implements Iterable<T>{
     private final Seq<T> intersectArray = new Seq<>();
     private final Rect viewport = new Rect();
     private final Rect intersectRect = new Rect();
+    /** maps entity IDs to their index in the array, for constant-time removal */
+    private final IntIntMap slots = new IntIntMap();
     private IntMap<T> map;
-    private QuadTree tree;
+    private SpatialIndex spatial;
     private boolean clearing;
 
     private int index;
@@ -31,10 +34,15 @@ public class EntityGroup<T extends Entityc> implements Iterable<T>{
     }
 
     public EntityGroup(Class<T> type, boolean spatial, boolean mapping){
+        this(type, spatial, mapping, 0f);
+    }
+
+    /** @param cellSize if positive, spatial groups use a uniform grid with cells of this size instead of a quadtree. */
+    public EntityGroup(Class<T> type, boolean spatial, boolean mapping, float cellSize){
         array = new Seq<>(false, 32, type);
 
         if(spatial){
-            tree = new QuadTree<>(new Rect(0, 0, 0, 0));
+            this.spatial = cellSize > 0 ? new SpatialGrid<>(cellSize) : new QuadTreeIndex<>();
         }
 
         if(mapping){
@@ -44,6 +52,11 @@ public class EntityGroup<T extends Entityc> implements Iterable<T>{
 
     public void sort(Comparator<? super T> comp){
         array.sort(comp);
+
+        slots.clear();
+        for(int i = 0; i < array.size; i++){
+            slots.put(array.items[i].id(), i);
+        }
     }
 
     public void collide(){
@@ -111,26 +124,36 @@ public class EntityGroup<T extends Entityc> implements Iterable<T>{
     public void intersect(float x, float y, float width, float height, Cons<? super T> out){
         //don't waste time for empty groups
         if(isEmpty()) return;
-        tree.intersect(x, y, width, height, out);
+        spatial.intersect(x, y, width, height, out);
     }
 
     public Seq<T> intersect(float x, float y, float width, float height){
         intersectArray.clear();
         //don't waste time for empty groups
         if(isEmpty()) return intersectArray;
-        tree.intersect(intersectRect.set(x, y, width, height), intersectArray);
+        spatial.intersect(intersectRect.set(x, y, width, height), intersectArray);
         return intersectArray;
     }
 
+    /** Rebuilds the spatial index from the current positions of all entities. */
+    public void buildIndex(){
+        spatialIndex().build(array);
+    }
+
+    public SpatialIndex spatialIndex(){
+        if(spatial == null) throw new RuntimeException("This group does not support spatial queries! Enable them when creating it.");
+        return spatial;
+    }
+
     public QuadTree tree(){
-        if(tree == null) throw new RuntimeException("This group does not support quadtrees! Enable quadtrees when creating it.");
-        return tree;
+        if(!(spatialIndex() instanceof QuadTreeIndex)) throw new RuntimeException("This group does not use a quadtree.");
+        return ((QuadTreeIndex)spatial).tree;
     }
 
-    /** Resizes the internal quadtree, if it is enabled.*/
+    /** Resizes the internal spatial index, if it is enabled.*/
     public void resize(float x, float y, float w, float h){
-        if(tree != null){
-            tree = new QuadTree<>(new Rect(x, y, w, h));
+        if(spatial != null){
+            spatial.resize(x, y, w, h);
         }
     }
 
@@ -157,6 +180,7 @@ public class EntityGroup<T extends Entityc> implements Iterable<T>{
     public void add(T type){
         if(type == null) throw new RuntimeException("Cannot add a null entity!");
         array.add(type);
+        slots.put(type.id(), array.size - 1);
 
         if(mappingEnabled()){
             map.put(type.id(), type);
@@ -166,9 +190,23 @@ public class EntityGroup<T extends Entityc> implements Iterable<T>{
     public void remove(T type){
         if(clearing) return;
         if(type == null) throw new RuntimeException("Cannot remove a null entity!");
-        int idx = array.indexOf(type, true);
+        int idx = slots.get(type.id(), -1);
+
+        //IDs of local and synced entities can collide, so fall back to a search if the slot belongs to something else
+        if(idx == -1 || idx >= array.size || array.items[idx] != type){
+            idx = array.indexOf(type, true);
+        }
+
         if(idx != -1){
+            //unordered removal; the last entity is moved into the freed slot
             array.remove(idx);
+            if(slots.get(type.id(), -1) == idx){
+                slots.remove(type.id(), -1);
+            }
+            if(idx < array.size){
+                slots.put(array.items[idx].id(), idx);
+            }
+
             if(map != null){
                 map.remove(type.id());
             }
@@ -185,6 +223,7 @@ public class EntityGroup<T extends Entityc> implements Iterable<T>{
 
         array.each(Entityc::remove);
         array.clear();
+        slots.clear();
         if(map != null) map.clear();
 
         clearing = false;
@@ -0,0 +1,194 @@
+package mindustry.entities;
+
+import arc.func.*;
+import arc.math.*;
+import arc.math.geom.*;
+import arc.math.geom.QuadTree.*;
+import arc.struct.*;
+
+import java.util.*;
+
+/**
+ * A uniform grid of square cells that is kept up to date by moving entries, instead of being rebuilt.
+ * Objects are added and removed as they enter or leave the indexed set; {@link #update()} moves the objects that crossed into another cell.
+ * Like {@link SpatialGrid}, each object is stored in the cell that contains its center, queries are expanded by the largest hitbox,
+ * and queries test the current hitbox of each object. Objects outside the grid are clamped to the border cells.
+ */
+@SuppressWarnings("unchecked")
+public class MovingGrid<T extends QuadTreeObject> implements SpatialIndex<T>{
+    private final float cellSize;
+    private final Rect rect = new Rect();
+    /** entry index of each object */
+    private final ObjectIntMap<QuadTreeObject> indices = new ObjectIntMap<>();
+
+    private float x, y;
+    private int width = 1, height = 1;
+    /** entry indices of the objects in each cell; allocated when first used */
+    private IntSeq[] members = new IntSeq[1];
+    /** indexed objects */
+    private QuadTreeObject[] objects = new QuadTreeObject[16];
+    /** cell of each entry */
+    private int[] cells = new int[16];
+    /** position of each entry in the member list of its cell */
+    private int[] slots = new int[16];
+    private int size;
+    /** largest hitbox half-size of all objects, as of the last update */
+    private float maxHalfSize;
+
+    public MovingGrid(float cellSize){
+        this.cellSize = cellSize;
+    }
+
+    /** Adds an object at its current position. Does nothing if it is already indexed. */
+    public void add(T object){
+        if(indices.containsKey(object)) return;
+
+        if(size == objects.length){
+            int capacity = size * 7 / 4;
+            objects = Arrays.copyOf(objects, capacity);
+            cells = Arrays.copyOf(cells, capacity);
+            slots = Arrays.copyOf(slots, capacity);
+        }
+
+        int index = size++;
+        objects[index] = object;
+        indices.put(object, index);
+
+        object.hitbox(rect);
+        maxHalfSize = Math.max(maxHalfSize, Math.max(rect.width, rect.height) / 2f);
+        place(index, cell(rect.x + rect.width / 2f, rect.y + rect.height / 2f));
+    }
+
+    /** Removes an object. Does nothing if it is not indexed. */
+    public void remove(T object){
+        int index = indices.remove(object, -1);
+        if(index == -1) return;
+
+        unplace(index);
+
+        //move the last entry into the freed index
+        int last = --size;
+        if(index != last){
+            QuadTreeObject moved = objects[index] = objects[last];
+            cells[index] = cells[last];
+            slots[index] = slots[last];
+            members[cells[index]].set(slots[index], index);
+            indices.put(moved, index);
+        }
+        objects[last] = null;
+    }
+
+    /** Moves every object that has left its cell since the last update. */
+    public void update(){
+        maxHalfSize = 0f;
+
+        for(int i = 0; i < size; i++){
+            objects[i].hitbox(rect);
+            maxHalfSize = Math.max(maxHalfSize, Math.max(rect.width, rect.height) / 2f);
+
+            int cell = cell(rect.x + rect.width / 2f, rect.y + rect.height / 2f);
+            if(cell != cells[i]){
+                unplace(i);
+                place(i, cell);
+            }
+        }
+    }
+
+    public int size(){
+        return size;
+    }
+
+    @Override
+    public void build(Seq<T> source){
+        clear();
+        for(int i = 0; i < source.size; i++){
+            add(source.get(i));
+        }
+    }
+
+    @Override
+    public void clear(){
+        Arrays.fill(objects, 0, size, null);
+        size = 0;
+        indices.clear();
+        maxHalfSize = 0f;
+
+        for(IntSeq seq : members){
+            if(seq != null) seq.clear();
+        }
+    }
+
+    @Override
+    public void resize(float x, float y, float width, float height){
+        this.x = x;
+        this.y = y;
+        this.width = Math.max((int)Math.ceil(width / cellSize), 1);
+        this.height = Math.max((int)Math.ceil(height / cellSize), 1);
+        members = new IntSeq[this.width * this.height];
+        clear();
+    }
+
+    @Override
+    public void intersect(float x, float y, float width, float height, Cons<? super T> out){
+        if(size == 0) return;
+
+        int minx = cellX(x - maxHalfSize), miny = cellY(y - maxHalfSize);
+        int maxx = cellX(x + width + maxHalfSize), maxy = cellY(y + height + maxHalfSize);
+
+        for(int cy = miny; cy <= maxy; cy++){
+            for(int cx = minx; cx <= maxx; cx++){
+                IntSeq seq = members[cy * this.width + cx];
+                if(seq == null) continue;
+
+                for(int i = 0; i < seq.size; i++){
+                    QuadTreeObject object = objects[seq.items[i]];
+                    if(overlaps(object, x, y, width, height)){
+                        out.get((T)object);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void intersect(Rect rect, Seq<? super T> out){
+        intersect(rect.x, rect.y, rect.width, rect.height, out::add);
+    }
+
+    private void place(int index, int cell){
+        IntSeq seq = members[cell];
+        if(seq == null) seq = members[cell] = new IntSeq(false, 4);
+
+        cells[index] = cell;
+        slots[index] = seq.size;
+        seq.add(index);
+    }
+
+    /** Removes an entry from the member list of its cell, moving the last member into its slot. */
+    private void unplace(int index){
+        IntSeq seq = members[cells[index]];
+        int slot = slots[index];
+
+        seq.removeIndex(slot);
+        if(slot < seq.size){
+            slots[seq.items[slot]] = slot;
+        }
+    }
+
+    private boolean overlaps(QuadTreeObject object, float x, float y, float width, float height){
+        object.hitbox(rect);
+        return x < rect.x + rect.width && x + width > rect.x && y < rect.y + rect.height && y + height > rect.y;
+    }
+
+    private int cell(float wx, float wy){
+        return cellY(wy) * width + cellX(wx);
+    }
+
+    private int cellX(float wx){
+        return Mathf.clamp((int)Math.floor((wx - x) / cellSize), 0, width - 1);
+    }
+
+    private int cellY(float wy){
+        return Mathf.clamp((int)Math.floor((wy - y) / cellSize), 0, height - 1);
+    }
+}
@@ -0,0 +1,196 @@
+package mindustry.entities;
+
+import arc.func.*;
+import arc.math.*;
+import arc.math.geom.*;
+import arc.math.geom.QuadTree.*;
+import arc.struct.*;
+
+import java.util.*;
+
+/**
+ * A uniform grid of square cells. Each object is stored in the cell that contains its center;
+ * queries are expanded by the largest hitbox in the grid, so objects overlapping a cell border are still found.
+ * Like a quadtree, objects are placed by their position at the time the grid was built, but queries test their current hitbox.
+ * {@link #intersectSnapshot} tests the hitboxes captured when the grid was built instead, and may be called from several threads at once.
+ * The grid is rebuilt with a counting sort into flat arrays, so it does not allocate after warming up.
+ * Works best for many objects of similar, small size. Objects outside the grid are clamped to the border cells.
+ */
+@SuppressWarnings("unchecked")
+public class SpatialGrid<T extends QuadTreeObject> implements SpatialIndex<T>{
+    private final float cellSize;
+    private final Rect rect = new Rect();
+
+    private float x, y;
+    private int width = 1, height = 1;
+    /** start of each cell's range in the sorted object list; cell i spans [cellStarts[i], cellStarts[i + 1]) */
+    private int[] cellStarts = new int[2];
+    /** object indices, sorted by cell */
+    private int[] sorted = {};
+    /** cell of each object */
+    private int[] cells = {};
+    /** hitbox of each object when the grid was built, packed as x, y, width, height */
+    private float[] bounds = {};
+    /** copy of the indexed objects, so the source may change between rebuilds */
+    private QuadTreeObject[] objects = {};
+    private int size;
+    /** largest hitbox half-size of all objects */
+    private float maxHalfSize;
+
+    public SpatialGrid(float cellSize){
+        this.cellSize = cellSize;
+    }
+
+    @Override
+    public void build(Seq<T> source){
+        int last = this.size, size = this.size = source.size;
+
+        if(cells.length < size){
+            int capacity = Math.max(size, cells.length * 7 / 4);
+            cells = new int[capacity];
+            sorted = new int[capacity];
+            bounds = new float[capacity * 4];
+            objects = new QuadTreeObject[capacity];
+        }
+
+        //don't hold on to removed objects
+        if(last > size && last <= objects.length){
+            Arrays.fill(objects, size, last, null);
+        }
+
+        int[] starts = cellStarts;
+        Arrays.fill(starts, 0);
+        maxHalfSize = 0f;
+
+        //count objects per cell
+        for(int i = 0; i < size; i++){
+            QuadTreeObject object = objects[i] = source.get(i);
+            object.hitbox(rect);
+            bounds[i * 4] = rect.x;
+            bounds[i * 4 + 1] = rect.y;
+            bounds[i * 4 + 2] = rect.width;
+            bounds[i * 4 + 3] = rect.height;
+            maxHalfSize = Math.max(maxHalfSize, Math.max(rect.width, rect.height) / 2f);
+
+            int cell = cell(rect.x + rect.width / 2f, rect.y + rect.height / 2f);
+            cells[i] = cell;
+            starts[cell + 1] ++;
+        }
+
+        //prefix sum into range starts
+        for(int i = 1; i < starts.length; i++){
+            starts[i] += starts[i - 1];
+        }
+
+        //place objects, using the start of each range as a cursor
+        for(int i = 0; i < size; i++){
+            sorted[starts[cells[i]]++] = i;
+        }
+
+        //placing moved every start to the end of its range; shift them back
+        for(int i = starts.length - 1; i > 0; i--){
+            starts[i] = starts[i - 1];
+        }
+        starts[0] = 0;
+    }
+
+    @Override
+    public void clear(){
+        Arrays.fill(objects, 0, size, null);
+        size = 0;
+        Arrays.fill(cellStarts, 0);
+        maxHalfSize = 0f;
+    }
+
+    @Override
+    public void resize(float x, float y, float width, float height){
+        this.x = x;
+        this.y = y;
+        this.width = Math.max((int)Math.ceil(width / cellSize), 1);
+        this.height = Math.max((int)Math.ceil(height / cellSize), 1);
+        cellStarts = new int[this.width * this.height + 1];
+        clear();
+    }
+
+    @Override
+    public void intersect(float x, float y, float width, float height, Cons<? super T> out){
+        if(size == 0) return;
+
+        int minx = cellX(x - maxHalfSize), miny = cellY(y - maxHalfSize);
+        int maxx = cellX(x + width + maxHalfSize), maxy = cellY(y + height + maxHalfSize);
+
+        for(int cy = miny; cy <= maxy; cy++){
+            for(int cx = minx; cx <= maxx; cx++){
+                int cell = cy * this.width + cx;
+                for(int i = cellStarts[cell], end = cellStarts[cell + 1]; i < end; i++){
+                    int index = sorted[i];
+                    if(overlaps(objects[index], x, y, width, height)){
+                        out.get((T)objects[index]);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void intersect(Rect rect, Seq<? super T> out){
+        if(size == 0) return;
+
+        int minx = cellX(rect.x - maxHalfSize), miny = cellY(rect.y - maxHalfSize);
+        int maxx = cellX(rect.x + rect.width + maxHalfSize), maxy = cellY(rect.y + rect.height + maxHalfSize);
+
+        for(int cy = miny; cy <= maxy; cy++){
+            for(int cx = minx; cx <= maxx; cx++){
+                int cell = cy * this.width + cx;
+                for(int i = cellStarts[cell], end = cellStarts[cell + 1]; i < end; i++){
+                    int index = sorted[i];
+                    if(overlaps(objects[index], rect.x, rect.y, rect.width, rect.height)){
+                        out.add((T)objects[index]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds every object whose hitbox, as it was when the grid was built, overlaps the specified rectangle to the output.
+     * Only reads the grid, so it is safe to call from several threads at once as long as the grid is not rebuilt.
+     */
+    public void intersectSnapshot(Rect rect, Seq<? super T> out){
+        if(size == 0) return;
+
+        int minx = cellX(rect.x - maxHalfSize), miny = cellY(rect.y - maxHalfSize);
+        int maxx = cellX(rect.x + rect.width + maxHalfSize), maxy = cellY(rect.y + rect.height + maxHalfSize);
+
+        for(int cy = miny; cy <= maxy; cy++){
+            for(int cx = minx; cx <= maxx; cx++){
+                int cell = cy * this.width + cx;
+                for(int i = cellStarts[cell], end = cellStarts[cell + 1]; i < end; i++){
+                    int index = sorted[i];
+                    float bx = bounds[index * 4], by = bounds[index * 4 + 1];
+                    if(rect.x < bx + bounds[index * 4 + 2] && rect.x + rect.width > bx && rect.y < by + bounds[index * 4 + 3] && rect.y + rect.height > by){
+                        out.add((T)objects[index]);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Tests the current hitbox of an object, as it may have moved since the grid was built. Not thread-safe. */
+    private boolean overlaps(QuadTreeObject object, float x, float y, float width, float height){
+        object.hitbox(rect);
+        return x < rect.x + rect.width && x + width > rect.x && y < rect.y + rect.height && y + height > rect.y;
+    }
+
+    private int cell(float wx, float wy){
+        return cellY(wy) * width + cellX(wx);
+    }
+
+    private int cellX(float wx){
+        return Mathf.clamp((int)Math.floor((wx - x) / cellSize), 0, width - 1);
+    }
+
+    private int cellY(float wy){
+        return Mathf.clamp((int)Math.floor((wy - y) / cellSize), 0, height - 1);
+    }
+}
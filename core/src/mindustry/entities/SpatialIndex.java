@@ -0,0 +1,58 @@
+package mindustry.entities;
+
+import arc.func.*;
+import arc.math.geom.*;
+import arc.math.geom.QuadTree.*;
+import arc.struct.*;
+
+/** A spatial index of the entities in a group. It is rebuilt from scratch every frame, then queried. */
+public interface SpatialIndex<T extends QuadTreeObject>{
+
+    /** Replaces the contents of this index with the specified objects. */
+    void build(Seq<T> objects);
+
+    /** Removes every object from this index. */
+    void clear();
+
+    /** Resizes the indexed area; clears the index. */
+    void resize(float x, float y, float width, float height);
+
+    /** Calls the consumer for every object whose hitbox overlaps the specified rectangle. */
+    void intersect(float x, float y, float width, float height, Cons<? super T> out);
+
+    /** Adds every object whose hitbox overlaps the specified rectangle to the output. */
+    void intersect(Rect rect, Seq<? super T> out);
+
+    /** Adapter for a regular quadtree. */
+    class QuadTreeIndex<T extends QuadTreeObject> implements SpatialIndex<T>{
+        public QuadTree<T> tree = new QuadTree<>(new Rect());
+
+        @Override
+        public void build(Seq<T> objects){
+            tree.clear();
+            for(int i = 0; i < objects.size; i++){
+                tree.insert(objects.get(i));
+            }
+        }
+
+        @Override
+        public void clear(){
+            tree.clear();
+        }
+
+        @Override
+        public void resize(float x, float y, float width, float height){
+            tree = new QuadTree<>(new Rect(x, y, width, height));
+        }
+
+        @Override
+        public void intersect(float x, float y, float width, float height, Cons<? super T> out){
+            tree.intersect(x, y, width, height, out);
+        }
+
+        @Override
+        public void intersect(Rect rect, Seq<? super T> out){
+            tree.intersect(rect, (Seq)out);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package mindustry.entities;
+
+import arc.*;
+import arc.math.*;
+import arc.struct.*;
+import mindustry.game.*;
+import mindustry.game.Teams.*;
+import mindustry.gen.*;
+
+import static mindustry.Vars.*;
+
+/**
+ * Caches unit candidates for area queries during a single frame.
+ * Query areas are expanded to a coarse grid, so nearby turrets and processors with similar ranges share the same quadtree query.
+ * Candidates are a superset of the units in the requested area; callers must still check range and filters themselves.
+ */
+@SuppressWarnings("unchecked")
+public class UnitQueryCache{
+    /** Size of the grid that query areas are expanded to, in world units. */
+    public static final float cellSize = 8 * tilesize;
+    //cell coordinates are clamped to 8 bits each, starting a few cells outside the map
+    private static final int cellOffset = 8, maxCell = 255;
+
+    /** Total number of queries, and how many of them were answered from the cache. */
+    public static long queries, hits;
+
+    //cached candidates for each team and whether they are enemies of that team, keyed by packed cell bounds
+    private static final IntMap<Seq<Unit>>[] cache = new IntMap[Team.all.length * 2];
+    private static final Seq<Seq<Unit>> used = new Seq<>(), free = new Seq<>();
+    private static long lastFrame = -1;
+
+    /** @return units of a team, or of all of its enemies, that may overlap a rectangle. The result is valid until the next frame, and must not be modified. */
+    public static Seq<Unit> get(Team team, boolean enemies, float x, float y, float width, float height){
+        long frame = Core.graphics.getFrameId();
+        if(frame != lastFrame){
+            clear();
+            lastFrame = frame;
+        }
+
+        int minx = cell(x), miny = cell(y), maxx = cell(x + width), maxy = cell(y + height);
+        int key = minx | miny << 8 | maxx << 16 | maxy << 24;
+        int index = team.id * 2 + (enemies ? 1 : 0);
+
+        if(cache[index] == null) cache[index] = new IntMap<>();
+
+        queries ++;
+        Seq<Unit> result = cache[index].get(key);
+        if(result != null){
+            hits ++;
+            return result;
+        }
+
+        Seq<Unit> out = free.isEmpty() ? new Seq<>(Unit.class) : free.pop();
+        used.add(out);
+
+        float cx = (minx - cellOffset) * cellSize, cy = (miny - cellOffset) * cellSize;
+        float cw = (maxx - minx + 1) * cellSize, ch = (maxy - miny + 1) * cellSize;
+
+        if(enemies){
+            Seq<TeamData> data = state.teams.present;
+            for(int i = 0; i < data.size; i++){
+                if(data.items[i].team != team){
+                    data.items[i].tree().intersect(cx, cy, cw, ch, out::add);
+                }
+            }
+        }else{
+            team.data().tree().intersect(cx, cy, cw, ch, out::add);
+        }
+
+        cache[index].put(key, out);
+        return out;
+    }
+
+    /** @return the fraction of queries answered from the cache since the last reset. */
+    public static float hitRate(){
+        return queries == 0 ? 0f : (float)hits / queries;
+    }
+
+    public static void resetStats(){
+        queries = hits = 0;
+    }
+
+    /** Discards all cached candidates. */
+    public static void clear(){
+        for(IntMap<Seq<Unit>> map : cache){
+            if(map != null) map.clear();
+        }
+
+        for(Seq<Unit> seq : used){
+            seq.clear();
+        }
+        free.addAll(used);
+        used.clear();
+    }
+
+    private static int cell(float coord){
+        return Mathf.clamp((int)Math.floor(coord / cellSize) + cellOffset, 0, maxCell);
+    }
+}
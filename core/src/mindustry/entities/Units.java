@@ -214,18 +214,21 @@ public class Units{
     public static Unit bestEnemy(Team team, float x, float y, float range, Boolf<Unit> predicate, Sortf sort){
         if(team == Team.derelict) return null;
 
-        result = null;
-        cdist = 0f;
+        Unit result = null;
+        float cdist = 0f;
 
-        nearbyEnemies(team, x - range, y - range, range*2f, range*2f, e -> {
-            if(e.dead() || !predicate.get(e) || !e.within(x, y, range + e.hitSize/2f)) return;
+        //candidates are shared with other queries in the same area this frame
+        Seq<Unit> units = UnitQueryCache.get(team, true, x - range, y - range, range*2f, range*2f);
+        for(int i = 0; i < units.size; i++){
+            Unit e = units.items[i];
+            if(e.dead() || !predicate.get(e) || !e.within(x, y, range + e.hitSize/2f)) continue;
 
             float cost = sort.cost(e, x, y);
             if(result == null || cost < cdist){
                 result = e;
                 cdist = cost;
             }
-        });
+        }
 
         return result;
     }
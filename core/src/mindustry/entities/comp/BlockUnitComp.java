@@ -26,8 +26,9 @@ abstract class BlockUnitComp implements Unitc{
 
     @Override
     public void update(){
-        if(tile != null){
+        if(tile != null && team != tile.team){
             team = tile.team;
+            state.teams.unitTeamChanged(self());
         }
     }
 
@@ -61,6 +62,7 @@ abstract class BlockUnitComp implements Unitc{
     public void team(Team team){
         if(tile != null && this.team != team){
             this.team = team;
+            state.teams.unitTeamChanged(self());
             if(tile.team != team){
                 tile.team(team);
             }
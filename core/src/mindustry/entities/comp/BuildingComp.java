@@ -1441,6 +1441,7 @@ abstract class BuildingComp implements Posc, Teamc, Healthc, Buildingc, Timerc,
         }
 
         if(power != null){
+            power.graph.refresh(self());
             power.graph.update();
         }
 
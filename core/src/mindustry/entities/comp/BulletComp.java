@@ -9,6 +9,7 @@ import arc.struct.*;
 import arc.util.*;
 import mindustry.annotations.Annotations.*;
 import mindustry.core.*;
+import mindustry.entities.*;
 import mindustry.entities.bullet.*;
 import mindustry.game.EventType.*;
 import mindustry.game.*;
@@ -33,11 +34,11 @@ abstract class BulletComp implements Timedc, Damagec, Hitboxc, Teamc, Posc, Draw
     transient boolean absorbed, hit;
 
     @Override
-    public void getCollisions(Cons<QuadTree> consumer){
+    public void getCollisions(Cons<SpatialGrid> consumer){
         Seq<TeamData> data = state.teams.present;
         for(int i = 0; i < data.size; i++){
             if(data.items[i].team != team){
-                consumer.get(data.items[i].tree());
+                consumer.get(data.items[i].unitSnapshot());
             }
         }
     }
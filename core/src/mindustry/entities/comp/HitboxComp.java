@@ -5,6 +5,7 @@ import arc.math.*;
 import arc.math.geom.*;
 import arc.math.geom.QuadTree.*;
 import mindustry.annotations.Annotations.*;
+import mindustry.entities.*;
 import mindustry.gen.*;
 
 @Component
@@ -33,7 +34,8 @@ abstract class HitboxComp implements Posc, Sized, QuadTreeObject{
         return hitSize;
     }
 
-    void getCollisions(Cons<QuadTree> consumer){
+    /** Passes every index of entities this entity may collide with to the consumer. Called from several threads at once. */
+    void getCollisions(Cons<SpatialGrid> consumer){
 
     }
 
@@ -45,13 +45,27 @@ abstract class PayloadComp implements Posc, Rotc, Hitboxc, Unitc{
         return payloads.size > 0;
     }
 
+    /** Adds a payload. Carried units still count towards the unit cap; this is the only place where they are counted as payload. */
     void addPayload(Payload load){
         payloads.add(load);
+
+        if(load instanceof UnitPayload p && isAdded()){
+            Vars.state.teams.countUnit(p.unit, 1);
+        }
+    }
+
+    /** Removes the last payload. A unit stops counting as payload here, after it was added to the world or handed to a block. */
+    void removeLastPayload(){
+        Payload load = payloads.pop();
+
+        if(load instanceof UnitPayload p && isAdded()){
+            Vars.state.teams.countUnit(p.unit, -1);
+        }
     }
 
     void pickup(Unit unit){
         unit.remove();
-        payloads.add(new UnitPayload(unit));
+        addPayload(new UnitPayload(unit));
         Fx.unitPickup.at(unit);
         if(Vars.net.client()){
             Vars.netClient.clearRemovedEntity(unit.id);
@@ -62,7 +76,7 @@ abstract class PayloadComp implements Posc, Rotc, Hitboxc, Unitc{
     void pickup(Building tile){
         tile.pickedUp();
         tile.tile.remove();
-        payloads.add(new BuildPayload(tile));
+        addPayload(new BuildPayload(tile));
         Fx.unitPickup.at(tile);
         Events.fire(new PickupEvent(self(), tile));
     }
@@ -73,7 +87,7 @@ abstract class PayloadComp implements Posc, Rotc, Hitboxc, Unitc{
         Payload load = payloads.peek();
 
         if(tryDropPayload(load)){
-            payloads.pop();
+            removeLastPayload();
             return true;
         }
         return false;
@@ -120,8 +134,6 @@ abstract class PayloadComp implements Posc, Rotc, Hitboxc, Unitc{
         u.rotation(rotation);
         //reset the ID to a new value to make sure it's synced
         u.id = EntityGroup.nextId();
-        //decrement count to prevent double increment
-        if(!u.isAdded()) u.team.data().updateCount(u.type, -1);
         u.add();
 
         return true;
@@ -19,6 +19,7 @@ import mindustry.entities.abilities.*;
 import mindustry.entities.units.*;
 import mindustry.game.EventType.*;
 import mindustry.game.*;
+import mindustry.game.Teams.*;
 import mindustry.gen.*;
 import mindustry.logic.*;
 import mindustry.type.*;
@@ -45,6 +46,8 @@ abstract class UnitComp implements Healthc, Physicsc, Hitboxc, Statusc, Teamc, I
     double flag;
 
     transient Seq<Ability> abilities = new Seq<>(0);
+    /** Team data that this unit is listed and counted under. */
+    transient @Nullable TeamData indexedTeam;
     private transient float resupplyTime = Mathf.random(10f);
     private transient boolean wasPlayer;
 
@@ -256,11 +259,18 @@ abstract class UnitComp implements Healthc, Physicsc, Hitboxc, Statusc, Teamc, I
         }
     }
 
+    public void team(Team team){
+        this.team = team;
+        state.teams.unitTeamChanged(self());
+    }
+
     @Override
     public void afterSync(){
         //set up type info after reading
         setType(this.type);
         controller.unit(self());
+        //the team is read directly into the field
+        state.teams.unitTeamChanged(self());
     }
 
     @Override
@@ -272,19 +282,18 @@ abstract class UnitComp implements Healthc, Physicsc, Hitboxc, Statusc, Teamc, I
 
     @Override
     public void add(){
-        team.data().updateCount(type, 1);
+        state.teams.unitAdded(self());
 
-        //check if over unit cap
+        //check if over unit cap; the unit is removed from the count when it is destroyed
         if(count() > cap() && !spawnedByCore && !dead && !state.rules.editor){
             Call.unitCapDeath(self());
-            team.data().updateCount(type, -1);
         }
 
     }
 
     @Override
     public void remove(){
-        team.data().updateCount(type, -1);
+        state.teams.unitRemoved(self());
         controller.removed(self());
     }
 
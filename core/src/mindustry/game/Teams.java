@@ -8,6 +8,7 @@ import arc.util.*;
 import mindustry.*;
 import mindustry.ai.*;
 import mindustry.content.*;
+import mindustry.entities.*;
 import mindustry.entities.units.*;
 import mindustry.gen.*;
 import mindustry.type.*;
@@ -20,8 +21,15 @@ import static mindustry.Vars.*;
 
 /** Class for various team-based utilities. */
 public class Teams{
+    /** Cell size of the unit grids and snapshots, in world units. */
+    private static final float unitCellSize = 8 * tilesize;
+
     /** Maps team IDs to team data. */
     private TeamData[] map = new TeamData[256];
+    /** Teams that have data, sorted by ID. */
+    private Seq<TeamData> created = new Seq<>(TeamData.class);
+    /** Number of units registered with {@link #unitAdded}. */
+    private int unitTotal;
     /** Active teams. */
     public Seq<TeamData> active = new Seq<>();
     /** Teams with block or unit presence. */
@@ -72,7 +80,13 @@ public class Teams{
 
     /** Returns team data by type. */
     public TeamData get(Team team){
-        if(map[team.id] == null) map[team.id] = new TeamData(team);
+        if(map[team.id] == null){
+            TeamData data = map[team.id] = new TeamData(team);
+
+            int index = 0;
+            while(index < created.size && created.items[index].team.id < team.id) index++;
+            created.insert(index, data);
+        }
         return map[team.id];
     }
 
@@ -117,7 +131,6 @@ public class Teams{
         if(data.active() && !active.contains(data)){
             active.add(data);
             updateEnemies();
-            indexer.updateTeamIndex(data.team);
         }
     }
 
@@ -132,79 +145,112 @@ public class Teams{
         }
     }
 
-    private void count(Unit unit){
-        unit.team.data().updateCount(unit.type, 1);
+    /** Adds a unit to the unit lists and counts of its team. Called when the unit is added to the world. */
+    public void unitAdded(Unit unit){
+        TeamData data = get(unit.team);
+        unit.indexedTeam = data;
+        data.addUnit(unit);
+        data.updateCount(unit.type, 1);
+        countPayloads(unit, 1);
+        unitTotal++;
+    }
+
+    /** Removes a unit from the unit lists and counts of the team it was added under. Called when the unit is removed from the world. */
+    public void unitRemoved(Unit unit){
+        TeamData data = unit.indexedTeam;
+        unit.indexedTeam = null;
+
+        //the unit was added under a previous game state
+        if(data == null || map[data.team.id] != data) return;
+
+        data.removeUnit(unit);
+        data.updateCount(unit.type, -1);
+        countPayloads(unit, -1);
+        unitTotal--;
+    }
+
+    /** Moves a unit to the lists and counts of its new team. Called when the team of an added unit changes. */
+    public void unitTeamChanged(Unit unit){
+        TeamData data = unit.indexedTeam;
+
+        //not added, or added under a previous game state
+        if(data == null || map[data.team.id] != data || data.team == unit.team) return;
+
+        data.removeUnit(unit);
+        data.updateCount(unit.type, -1);
 
+        TeamData other = get(unit.team);
+        unit.indexedTeam = other;
+        other.addUnit(unit);
+        other.updateCount(unit.type, 1);
+    }
+
+    /** Adds to the counts of a unit and all units it carries. Used when units are picked up or dropped as payload, as carried units still count towards the cap. */
+    public void countUnit(Unit unit, int amount){
+        unit.team.data().updateCount(unit.type, amount);
+        countPayloads(unit, amount);
+    }
+
+    private void countPayloads(Unit unit, int amount){
         if(unit instanceof Payloadc payloadc){
             payloadc.payloads().each(p -> {
                 if(p instanceof UnitPayload payload){
-                    count(payload.unit);
+                    countUnit(payload.unit, amount);
                 }
             });
         }
     }
 
+    /** Rebuilds all unit lists and counts from the unit group. */
+    private void reindexUnits(){
+        for(int i = 0; i < created.size; i++){
+            created.items[i].clearUnits();
+        }
+
+        unitTotal = 0;
+        for(Unit unit : Groups.unit){
+            unitAdded(unit);
+        }
+    }
+
     public void updateTeamStats(){
+        //units that were added without being registered here, e.g. before this game state was created
+        if(unitTotal != Groups.unit.size()){
+            reindexUnits();
+        }
+
         present.clear();
         boss = null;
 
-        for(Team team : Team.all){
-            TeamData data = team.data();
+        for(int i = 0; i < created.size; i++){
+            TeamData data = created.items[i];
 
-            data.presentFlag = false;
-            data.unitCount = 0;
-            data.units.clear();
-            if(data.tree != null){
-                data.tree.clear();
-            }
-
-            if(data.typeCounts != null){
-                Arrays.fill(data.typeCounts, 0);
-            }
+            //only units that crossed into another cell are moved
+            data.tree().update();
 
-            //clear old unit records
-            if(data.unitsByType != null){
-                for(int i = 0; i < data.unitsByType.length; i++){
-                    if(data.unitsByType[i] != null){
-                        data.unitsByType[i].clear();
+            if(data.team == state.rules.waveTeam){
+                for(int j = 0; j < data.units.size; j++){
+                    Unit unit = data.units.items[j];
+                    if(unit.isBoss()){
+                        boss = unit;
                     }
                 }
             }
-        }
-
-        //update presence flag.
-        Groups.build.each( b -> b.team.data().presentFlag = true);
-
-        for(Unit unit : Groups.unit){
-            TeamData data = unit.team.data();
-            data.tree().insert(unit);
-            data.units.add(unit);
-            data.presentFlag = true;
-
-            if(unit.team == state.rules.waveTeam && unit.isBoss()){
-                boss = unit;
-            }
-
-            if(data.unitsByType == null || data.unitsByType.length <= unit.type.id){
-                data.unitsByType = new Seq[content.units().size];
-            }
 
-            if(data.unitsByType[unit.type.id] == null){
-                data.unitsByType[unit.type.id] = new Seq<>();
+            if(data.units.size > 0 || indexer.getBuildingCount(data.team) > 0 || data.active()){
+                present.add(data);
             }
-
-            data.unitsByType[unit.type.id].add(unit);
-
-            count(unit);
         }
+    }
 
-        //update presence of each team.
-        for(Team team : Team.all){
-            TeamData data = team.data();
-
-            if(data.presentFlag || data.active()){
-                present.add(data);
-            }
+    /**
+     * Captures the current hitboxes of the units of every present team into flat arrays, see {@link TeamData#unitSnapshot()}.
+     * Unlike the quadtrees, the snapshots can be queried from several threads at once. Main thread only.
+     */
+    public void snapshotUnits(){
+        for(int i = 0; i < present.size; i++){
+            TeamData data = present.items[i];
+            data.unitSnapshot().build(data.units);
         }
     }
 
@@ -231,8 +277,6 @@ public class Teams{
         public final Team team;
         public final BaseAI ai;
 
-        private boolean presentFlag;
-
         /** Enemies with cores or spawn points. */
         public Team[] coreEnemies = {};
         /** Planned blocks for drones. This is usually only blocks that have been broken. */
@@ -247,15 +291,23 @@ public class Teams{
         /** Counts for each type of unit. Do not access directly. */
         @Nullable
         public int[] typeCounts;
-        /** Quadtree for units of this type. Do not access directly. */
+        /** Spatial index for units of this team. Updated when units are added, removed or moved. Do not access directly. */
+        @Nullable
+        public MovingGrid<Unit> tree;
+        /** Unit hitboxes captured for parallel queries, see {@link Teams#snapshotUnits()}. Do not access directly. */
         @Nullable
-        public QuadTree<Unit> tree;
-        /** Units of this team. Updated each frame. */
-        public Seq<Unit> units = new Seq<>();
-        /** Units of this team by type. Updated each frame. */
+        public SpatialGrid<Unit> unitSnapshot;
+        /** Units of this team, in no particular order. Updated when units are added or removed. */
+        public Seq<Unit> units = new Seq<>(false, 16, Unit.class);
+        /** Units of this team by type, in no particular order. Updated when units are added or removed. */
         @Nullable
         public Seq<Unit>[] unitsByType;
 
+        /** Index of each unit in {@link #units}, by unit ID. */
+        private final IntIntMap unitSlots = new IntIntMap();
+        /** Index of each unit in its list in {@link #unitsByType}, by unit ID. */
+        private final IntIntMap typeSlots = new IntIntMap();
+
         public TeamData(Team team){
             this.team = team;
             this.ai = new BaseAI(this);
@@ -267,6 +319,84 @@ public class Teams{
             return unitsByType[type.id];
         }
 
+        void addUnit(Unit unit){
+            units.add(unit);
+            unitSlots.put(unit.id, units.size - 1);
+
+            if(unitsByType == null || unitsByType.length <= unit.type.id){
+                Seq<Unit>[] old = unitsByType;
+                unitsByType = new Seq[content.units().size];
+                if(old != null) System.arraycopy(old, 0, unitsByType, 0, old.length);
+            }
+
+            if(unitsByType[unit.type.id] == null){
+                unitsByType[unit.type.id] = new Seq<>(false, 16, Unit.class);
+            }
+
+            Seq<Unit> byType = unitsByType[unit.type.id];
+            byType.add(unit);
+            typeSlots.put(unit.id, byType.size - 1);
+
+            if(tree != null){
+                tree.add(unit);
+            }
+        }
+
+        void removeUnit(Unit unit){
+            removeSlotted(units, unitSlots, unit);
+
+            Seq<Unit> byType = unitCache(unit.type);
+            if(byType != null){
+                removeSlotted(byType, typeSlots, unit);
+            }
+
+            if(tree != null){
+                tree.remove(unit);
+            }
+        }
+
+        /** Removes a unit from an unordered list in constant time, moving the last unit into its slot. */
+        private static void removeSlotted(Seq<Unit> seq, IntIntMap slots, Unit unit){
+            int idx = slots.get(unit.id, -1);
+
+            //IDs of local and synced units can collide, so fall back to a search if the slot belongs to something else
+            if(idx == -1 || idx >= seq.size || seq.items[idx] != unit){
+                idx = seq.indexOf(unit, true);
+            }
+
+            if(idx != -1){
+                seq.remove(idx);
+
+                if(slots.get(unit.id, -1) == idx){
+                    slots.remove(unit.id, -1);
+                }
+                if(idx < seq.size){
+                    slots.put(seq.items[idx].id, idx);
+                }
+            }
+        }
+
+        void clearUnits(){
+            unitCount = 0;
+            units.clear();
+            unitSlots.clear();
+            typeSlots.clear();
+
+            if(tree != null){
+                tree.clear();
+            }
+
+            if(typeCounts != null){
+                Arrays.fill(typeCounts, 0);
+            }
+
+            if(unitsByType != null){
+                for(Seq<Unit> seq : unitsByType){
+                    if(seq != null) seq.clear();
+                }
+            }
+        }
+
         public void updateCount(UnitType type, int amount){
             if(type == null) return;
             unitCount = Math.max(amount + unitCount, 0);
@@ -276,11 +406,26 @@ public class Teams{
             typeCounts[type.id] = Math.max(amount + typeCounts[type.id], 0);
         }
 
-        public QuadTree<Unit> tree(){
-            if(tree == null) tree = new QuadTree<>(Vars.world.getQuadBounds(new Rect()));
+        public MovingGrid<Unit> tree(){
+            if(tree == null){
+                Rect bounds = Vars.world.getQuadBounds(new Rect());
+                tree = new MovingGrid<>(unitCellSize);
+                tree.resize(bounds.x, bounds.y, bounds.width, bounds.height);
+                tree.build(units);
+            }
             return tree;
         }
 
+        /** @return the hitboxes of this team's units at the last {@link Teams#snapshotUnits()}. Safe to query from several threads at once. */
+        public SpatialGrid<Unit> unitSnapshot(){
+            if(unitSnapshot == null){
+                Rect bounds = Vars.world.getQuadBounds(new Rect());
+                unitSnapshot = new SpatialGrid<>(unitCellSize);
+                unitSnapshot.resize(bounds.x, bounds.y, bounds.width, bounds.height);
+            }
+            return unitSnapshot;
+        }
+
         public int countType(UnitType type){
             return typeCounts == null || typeCounts.length <= type.id ? 0 : typeCounts[type.id];
         }
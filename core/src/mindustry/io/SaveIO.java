@@ -2,6 +2,7 @@ package mindustry.io;
 
 import arc.*;
 import arc.files.*;
+import arc.func.*;
 import arc.struct.*;
 import arc.util.*;
 import arc.util.io.*;
@@ -12,7 +13,9 @@ import mindustry.io.versions.*;
 import mindustry.world.*;
 
 import java.io.*;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.zip.*;
 
 import static mindustry.Vars.*;
@@ -21,7 +24,13 @@ public class SaveIO{
     /** Format header. This is the string 'MSAV' in ASCII. */
     public static final byte[] header = {77, 83, 65, 86};
     public static final IntMap<SaveVersion> versions = new IntMap<>();
-    public static final Seq<SaveVersion> versionArray = Seq.with(new Save1(), new Save2(), new Save3(), new Save4());
+    public static final Seq<SaveVersion> versionArray = Seq.with(new Save1(), new Save2(), new Save3(), new Save4(), new Save5());
+
+    private static final ExecutorService saveExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "Save-Thread");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     static{
         for(SaveVersion version : versionArray){
@@ -48,6 +57,64 @@ public class SaveIO{
         }
     }
 
+    /**
+     * Saves to a file without compressing or writing it on the calling thread.
+     * The game state is captured into memory immediately, then compressed and written on a background thread.
+     * The file is replaced atomically once it has been written completely, and a copy of the previous file is kept as a backup, as in {@link #save(Fi)}.
+     * Saves are written in the order they were requested; see {@link #finishSaves()} for waiting on them before exiting.
+     * @param done called on the main thread when the save is written, with the error if it failed, or null.
+     */
+    public static void saveAsync(Fi file, Cons<Throwable> done){
+        SaveVersion version = getVersion();
+        SaveFileReader.IORunner<DataOutput> writer;
+        try{
+            writer = version.capture(null);
+        }catch(Throwable e){
+            done.get(e);
+            return;
+        }
+
+        saveExecutor.execute(() -> {
+            Fi temp = file.sibling("." + file.name() + ".tmp"), backup = backupFileFor(file);
+            Throwable error = null;
+
+            try{
+                try(DataOutputStream out = new DataOutputStream(container(temp.write(false, bufferSize)))){
+                    out.write(header);
+                    out.writeInt(version.version);
+                    writer.accept(out);
+                }
+
+                //the file stays in place until the new one replaces it, so there is always a complete save
+                if(file.exists()){
+                    Files.copy(file.file().toPath(), backup.file().toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+                Files.move(temp.file().toPath(), file.file().toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }catch(Throwable e){
+                error = e;
+                temp.delete();
+            }
+
+            Throwable result = error;
+            Core.app.post(() -> done.get(result));
+        });
+    }
+
+    /**
+     * Waits for all saves requested with {@link #saveAsync} to be written. The save thread is a daemon, so pending saves are lost if the application exits first.
+     * No more background saves can be requested afterwards; call this when exiting.
+     */
+    public static void finishSaves(){
+        saveExecutor.shutdown();
+        try{
+            if(!saveExecutor.awaitTermination(1, TimeUnit.MINUTES)){
+                Log.err("Timed out waiting for background saves to finish.");
+            }
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
     public static DataInputStream getStream(Fi file){
         return new DataInputStream(new InflaterInputStream(file.read(bufferSize)));
     }
@@ -105,7 +172,24 @@ public class SaveIO{
     }
 
     public static void write(Fi file, StringMap tags){
-        write(new FastDeflaterOutputStream(file.write(false, bufferSize)), tags);
+        write(container(file.write(false, bufferSize)), tags);
+    }
+
+    /**
+     * @return a stream that wraps a save file in the zlib format that all save readers expect.
+     * The current save version compresses its map and entities itself, so they are stored without further compression.
+     */
+    public static DeflaterOutputStream container(OutputStream out){
+        return new DeflaterOutputStream(out, new Deflater(Deflater.NO_COMPRESSION), bufferSize){
+            @Override
+            public void close() throws IOException{
+                try{
+                    super.close();
+                }finally{
+                    def.end();
+                }
+            }
+        };
     }
 
     public static void write(Fi file){
@@ -69,6 +69,19 @@ public abstract class SaveVersion extends SaveFileReader{
         region("entities", stream, this::writeEntities);
     }
 
+    /**
+     * Serializes the game state on the calling thread and returns a writer for the regions, which can run on any thread.
+     * Versions that compress their own regions defer that compression to the writer.
+     */
+    public IORunner<DataOutput> capture(@Nullable StringMap tags) throws IOException{
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        write(out, tags == null ? new StringMap() : tags);
+        out.flush();
+        byte[] data = bytes.toByteArray();
+        return stream -> stream.write(data);
+    }
+
     public void writeMeta(DataOutput stream, StringMap tags) throws IOException{
         //prepare campaign data for writing
         if(state.isCampaign()){
@@ -130,6 +143,11 @@ public abstract class SaveVersion extends SaveFileReader{
         )) : worldmap;
     }
 
+    /** Writes the map for a network stream, which is compressed as a whole. Readable by {@link #readMap}. */
+    public void writeNetworkMap(DataOutput stream) throws IOException{
+        writeMap(stream);
+    }
+
     public void writeMap(DataOutput stream) throws IOException{
         //write world size
         stream.writeShort(world.width());
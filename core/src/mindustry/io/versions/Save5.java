@@ -0,0 +1,386 @@
+package mindustry.io.versions;
+
+import arc.func.*;
+import arc.math.*;
+import arc.struct.*;
+import arc.util.*;
+import arc.util.io.*;
+import mindustry.content.*;
+import mindustry.io.*;
+import mindustry.world.*;
+
+import java.io.*;
+import java.util.zip.*;
+
+import static mindustry.Vars.*;
+
+/**
+ * Splits the map into square chunks that are compressed separately, followed by an index of their lengths.
+ * Chunks are compressed and decompressed in parallel; entities are compressed as one block.
+ * Maps sent over the network are written uncompressed, as the network stream is compressed as a whole.
+ * Since the bulky regions are compressed here, saves of this version are stored in an uncompressed container, see {@link SaveIO#container(OutputStream)}.
+ */
+public class Save5 extends SaveVersion{
+    /** Width and height of each map chunk, in tiles. */
+    public static final int chunkSize = 64;
+
+    public Save5(){
+        super(5);
+    }
+
+    @Override
+    public void writeMap(DataOutput stream) throws IOException{
+        byte[][] raw = writeChunks();
+        byte[][] compressed = new byte[raw.length][];
+        each(raw.length, i -> compressed[i] = deflate(raw[i]));
+
+        writeMap(stream, world.width(), world.height(), raw, compressed);
+    }
+
+    /** Writes the map without compressing its chunks, for streams that are compressed as a whole. */
+    @Override
+    public void writeNetworkMap(DataOutput stream) throws IOException{
+        writeMap(stream, world.width(), world.height(), writeChunks(), null);
+    }
+
+    /** Serializes the game state on this thread, leaving the compression of the map chunks and entities to the returned writer. */
+    @Override
+    public IORunner<DataOutput> capture(@Nullable StringMap tags) throws IOException{
+        byte[] meta = toBytes(out -> writeMeta(out, tags == null ? new StringMap() : tags));
+        byte[] header = toBytes(this::writeContentHeader);
+        int width = world.width(), height = world.height();
+        byte[][] raw = writeChunks();
+        byte[] entities = toBytes(super::writeEntities);
+
+        return stream -> {
+            //the writer runs on a background thread; the shared worker pool belongs to the main thread, which would wait behind these tasks
+            byte[][] compressed = new byte[raw.length][];
+            for(int i = 0; i < raw.length; i++){
+                compressed[i] = deflate(raw[i]);
+            }
+
+            writeRegion(stream, meta);
+            writeRegion(stream, header);
+            writeRegion(stream, toBytes(out -> writeMap(out, width, height, raw, compressed)));
+            writeRegion(stream, toBytes(out -> writeEntities(out, entities, deflate(entities))));
+        };
+    }
+
+    /** @param compressed the compressed chunks, or null to write the raw chunks without compression. */
+    void writeMap(DataOutput stream, int width, int height, byte[][] raw, @Nullable byte[][] compressed) throws IOException{
+        stream.writeShort(width);
+        stream.writeShort(height);
+        stream.writeShort(chunkSize);
+        stream.writeBoolean(compressed != null);
+
+        for(int i = 0; i < raw.length; i++){
+            stream.writeInt(raw[i].length);
+            if(compressed != null) stream.writeInt(compressed[i].length);
+        }
+
+        for(byte[] chunk : compressed == null ? raw : compressed){
+            stream.write(chunk);
+        }
+    }
+
+    /** Serializes every map chunk. Buildings are written on this thread, as their IO is not thread-safe. */
+    byte[][] writeChunks() throws IOException{
+        int width = world.width(), height = world.height();
+        int chunksX = Mathf.ceil(width / (float)chunkSize), chunksY = Mathf.ceil(height / (float)chunkSize), chunks = chunksX * chunksY;
+
+        byte[][] raw = new byte[chunks][];
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        for(int i = 0; i < chunks; i++){
+            int x = i % chunksX * chunkSize, y = i / chunksX * chunkSize;
+            bytes.reset();
+            writeTiles(out, x, y, Math.min(chunkSize, width - x), Math.min(chunkSize, height - y));
+            out.flush();
+            raw[i] = bytes.toByteArray();
+        }
+
+        return raw;
+    }
+
+    @Override
+    public void readMap(DataInput stream, WorldContext context) throws IOException{
+        int width = stream.readUnsignedShort(), height = stream.readUnsignedShort(), size = stream.readUnsignedShort();
+        int chunksX = Mathf.ceil(width / (float)size), chunksY = Mathf.ceil(height / (float)size), chunks = chunksX * chunksY;
+
+        boolean isCompressed = stream.readBoolean();
+
+        int[] lengths = new int[chunks];
+        byte[][] data = new byte[chunks][];
+
+        for(int i = 0; i < chunks; i++){
+            lengths[i] = stream.readInt();
+            data[i] = new byte[isCompressed ? stream.readInt() : lengths[i]];
+        }
+
+        for(byte[] chunk : data){
+            stream.readFully(chunk);
+        }
+
+        byte[][] raw = isCompressed ? new byte[chunks][] : data;
+        if(isCompressed) each(chunks, i -> raw[i] = inflate(data[i], lengths[i]));
+
+        boolean generating = context.isGenerating();
+
+        if(!generating) context.begin();
+        try{
+            context.resize(width, height);
+
+            DataInputStream[] inputs = new DataInputStream[chunks];
+
+            //all tiles must exist before any blocks are placed, as multiblocks can span several chunks
+            for(int i = 0; i < chunks; i++){
+                int x = i % chunksX * size, y = i / chunksX * size;
+                inputs[i] = new DataInputStream(new ByteArrayInputStream(raw[i]));
+                readFloors(inputs[i], context, x, y, Math.min(size, width - x), Math.min(size, height - y));
+            }
+
+            for(int i = 0; i < chunks; i++){
+                int x = i % chunksX * size, y = i / chunksX * size;
+                readBlocks(inputs[i], context, width, x, y, Math.min(size, width - x), Math.min(size, height - y));
+            }
+        }finally{
+            if(!generating) context.end();
+        }
+    }
+
+    @Override
+    public void writeEntities(DataOutput stream) throws IOException{
+        byte[] raw = toBytes(super::writeEntities);
+        writeEntities(stream, raw, deflate(raw));
+    }
+
+    void writeEntities(DataOutput stream, byte[] raw, byte[] compressed) throws IOException{
+        stream.writeInt(raw.length);
+        stream.writeInt(compressed.length);
+        stream.write(compressed);
+    }
+
+    @Override
+    public void readEntities(DataInput stream) throws IOException{
+        int length = stream.readInt();
+        byte[] compressed = new byte[stream.readInt()];
+        stream.readFully(compressed);
+
+        super.readEntities(new DataInputStream(new ByteArrayInputStream(inflate(compressed, length))));
+    }
+
+    /** Writes the tiles in a rectangle, in the same format as {@link SaveVersion#writeMap}. Runs of equal tiles do not continue past the rectangle. */
+    void writeTiles(DataOutput stream, int x, int y, int width, int height) throws IOException{
+        int size = width * height;
+
+        //floor + overlay
+        for(int i = 0; i < size; i++){
+            Tile tile = world.rawTile(x + i % width, y + i / width);
+            stream.writeShort(tile.floorID());
+            stream.writeShort(tile.overlayID());
+            int consecutives = 0;
+
+            for(int j = i + 1; j < size && consecutives < 255; j++){
+                Tile nextTile = world.rawTile(x + j % width, y + j / width);
+
+                if(nextTile.floorID() != tile.floorID() || nextTile.overlayID() != tile.overlayID()){
+                    break;
+                }
+
+                consecutives++;
+            }
+
+            stream.writeByte(consecutives);
+            i += consecutives;
+        }
+
+        //blocks
+        for(int i = 0; i < size; i++){
+            Tile tile = world.rawTile(x + i % width, y + i / width);
+            stream.writeShort(tile.blockID());
+
+            boolean savedata = tile.block().saveData;
+            byte packed = (byte)((tile.build != null ? 1 : 0) | (savedata ? 2 : 0));
+
+            //make note of whether there was an entity/rotation here
+            stream.writeByte(packed);
+
+            //only write the entity for multiblocks once - in the center
+            if(tile.build != null){
+                if(tile.isCenter()){
+                    stream.writeBoolean(true);
+                    writeChunk(stream, true, out -> {
+                        out.writeByte(tile.build.version());
+                        tile.build.writeAll(Writes.get(out));
+                    });
+                }else{
+                    stream.writeBoolean(false);
+                }
+            }else if(savedata){
+                stream.writeByte(tile.data);
+            }else{
+                //write consecutive non-entity blocks
+                int consecutives = 0;
+
+                for(int j = i + 1; j < size && consecutives < 255; j++){
+                    Tile nextTile = world.rawTile(x + j % width, y + j / width);
+
+                    if(nextTile.blockID() != tile.blockID()){
+                        break;
+                    }
+
+                    consecutives++;
+                }
+
+                stream.writeByte(consecutives);
+                i += consecutives;
+            }
+        }
+    }
+
+    void readFloors(DataInput stream, WorldContext context, int x, int y, int width, int height) throws IOException{
+        int size = width * height;
+
+        for(int i = 0; i < size; i++){
+            short floorid = stream.readShort();
+            short oreid = stream.readShort();
+            int consecutives = stream.readUnsignedByte();
+            if(content.block(floorid) == Blocks.air) floorid = Blocks.stone.id;
+
+            for(int j = i; j < i + 1 + consecutives; j++){
+                context.create(x + j % width, y + j / width, floorid, oreid, (short)0);
+            }
+
+            i += consecutives;
+        }
+    }
+
+    void readBlocks(DataInput stream, WorldContext context, int worldWidth, int x, int y, int width, int height) throws IOException{
+        int size = width * height;
+
+        for(int i = 0; i < size; i++){
+            Block block = content.block(stream.readShort());
+            Tile tile = context.tile(index(i, worldWidth, x, y, width));
+            if(block == null) block = Blocks.air;
+            boolean isCenter = true;
+            byte packedCheck = stream.readByte();
+            boolean hadEntity = (packedCheck & 1) != 0;
+            boolean hadData = (packedCheck & 2) != 0;
+
+            if(hadEntity){
+                isCenter = stream.readBoolean();
+            }
+
+            //set block only if this is the center; otherwise, it's handled elsewhere
+            if(isCenter){
+                tile.setBlock(block);
+            }
+
+            if(hadEntity){
+                if(isCenter){ //only read entity for center blocks
+                    if(block.hasBuilding()){
+                        try{
+                            readChunk(stream, true, in -> {
+                                byte revision = in.readByte();
+                                tile.build.readAll(Reads.get(in), revision);
+                            });
+                        }catch(Throwable e){
+                            throw new IOException("Failed to read tile entity of block: " + block, e);
+                        }
+                    }else{
+                        //skip the entity region, as the entity and its IO code are now gone
+                        skipChunk(stream, true);
+                    }
+
+                    context.onReadBuilding();
+                }
+            }else if(hadData){
+                tile.setBlock(block);
+                tile.data = stream.readByte();
+            }else{
+                int consecutives = stream.readUnsignedByte();
+
+                for(int j = i + 1; j < i + 1 + consecutives; j++){
+                    context.tile(index(j, worldWidth, x, y, width)).setBlock(block);
+                }
+
+                i += consecutives;
+            }
+        }
+    }
+
+    /** Writes a save region with its length, like {@link #region(String, DataOutput, IORunner)}, without going through the shared chunk buffer. */
+    static void writeRegion(DataOutput stream, byte[] bytes) throws IOException{
+        stream.writeInt(bytes.length);
+        stream.write(bytes);
+    }
+
+    static byte[] toBytes(IORunner<DataOutput> runner) throws IOException{
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        runner.accept(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /** @return the world tile index of a tile inside a chunk. */
+    static int index(int i, int worldWidth, int x, int y, int width){
+        return (y + i / width) * worldWidth + x + i % width;
+    }
+
+    /** Runs a task for each chunk, on the async worker threads if they are available. Main thread only, as it occupies the shared worker pool. */
+    static void each(int amount, Intc task){
+        if(asyncCore == null){
+            for(int i = 0; i < amount; i++) task.get(i);
+            return;
+        }
+
+        asyncCore.parallel(amount, 1, (from, to) -> {
+            for(int i = from; i < to; i++){
+                task.get(i);
+            }
+        });
+    }
+
+    static byte[] deflate(byte[] raw){
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try{
+            deflater.setInput(raw);
+            deflater.finish();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4 + 16);
+            byte[] buffer = new byte[4096];
+            while(!deflater.finished()){
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        }finally{
+            deflater.end();
+        }
+    }
+
+    static byte[] inflate(byte[] compressed, int length){
+        Inflater inflater = new Inflater();
+        try{
+            inflater.setInput(compressed);
+
+            byte[] out = new byte[length];
+            int read = 0;
+            while(read < length && !inflater.finished()){
+                int amount = inflater.inflate(out, read, length - read);
+                if(amount == 0 && inflater.needsInput()) break;
+                read += amount;
+            }
+
+            if(read != length){
+                throw new IOException("Chunk length mismatch. Expected: " + length + "; Actual: " + read);
+            }
+            return out;
+        }catch(IOException | DataFormatException e){
+            throw new RuntimeException(e);
+        }finally{
+            inflater.end();
+        }
+    }
+}
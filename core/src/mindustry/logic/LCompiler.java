@@ -0,0 +1,336 @@
+package mindustry.logic;
+
+import mindustry.logic.LExecutor.*;
+
+import static mindustry.logic.LExecutor.*;
+
+/**
+ * Specializes assembled instructions by the kind of their operands.
+ * Operands are resolved to their variables once, numeric constants are read ahead of time,
+ * and assignments, operations and jumps skip the lookups and lambda calls of the generic instructions.
+ * Instructions that cannot be specialized are kept as they are.
+ */
+public class LCompiler{
+
+    /** @return the specialized instructions. The executor must already have its variables loaded. */
+    public static LInstruction[] compile(LExecutor exec, LInstruction[] instructions){
+        LInstruction[] out = new LInstruction[instructions.length];
+        for(int i = 0; i < instructions.length; i++){
+            out[i] = compile(exec, instructions[i]);
+        }
+        return out;
+    }
+
+    static LInstruction compile(LExecutor exec, LInstruction inst){
+        if(inst instanceof SetI set){
+            Var to = exec.var(set.to);
+            if(to.constant) return inst;
+
+            return isNumConst(exec, set.from) ? new SetNumI(num(exec.var(set.from)), to) : new SetVarI(exec.var(set.from), to);
+        }else if(inst instanceof OpI op){
+            Var dest = exec.var(op.dest);
+            if(dest.constant || op.op == LogicOp.strictEqual) return inst;
+
+            if(op.op.unary){
+                return new UnaryOpI(op.op, exec.var(op.a), dest);
+            }
+
+            boolean constA = isNumConst(exec, op.a), constB = isNumConst(exec, op.b);
+
+            //fold operations on constants, except random ones
+            if(constA && constB && op.op != LogicOp.rand){
+                double value = eval(op.op, num(exec.var(op.a)), num(exec.var(op.b)));
+                if(!invalid(value)){
+                    return new SetNumI(value, dest);
+                }
+            }
+
+            return constB ? new OpConstI(op.op, exec.var(op.a), num(exec.var(op.b)), dest) : new OpVarI(op.op, exec.var(op.a), exec.var(op.b), dest);
+        }else if(inst instanceof JumpI jump){
+            if(jump.address == -1 || jump.op == ConditionOp.strictEqual) return inst;
+
+            Var counter = exec.var(varCounter);
+
+            if(jump.op == ConditionOp.always){
+                return new JumpAlwaysI(counter, jump.address);
+            }
+
+            return isNumConst(exec, jump.compare) ?
+                new JumpConstI(jump.op, exec.var(jump.value), num(exec.var(jump.compare)), counter, jump.address) :
+                new JumpVarI(jump.op, exec.var(jump.value), exec.var(jump.compare), counter, jump.address);
+        }
+
+        return inst;
+    }
+
+    /** @return whether a variable is a number that can never change. Special variables are updated by the executor, so they are excluded. */
+    static boolean isNumConst(LExecutor exec, int index){
+        Var var = exec.var(index);
+        return (index < 0 || index > varTick) && var.constant && !var.isobj;
+    }
+
+    static boolean invalid(double d){
+        return Double.isNaN(d) || Double.isInfinite(d);
+    }
+
+    static double num(Var v){
+        return v.isobj ? v.objval != null ? 1 : 0 : invalid(v.numval) ? 0 : v.numval;
+    }
+
+    static void setnum(Var v, double value){
+        if(invalid(value)){
+            v.objval = null;
+            v.isobj = true;
+        }else{
+            v.numval = value;
+            v.objval = null;
+            v.isobj = false;
+        }
+    }
+
+    /** Evaluates a binary operation. Common operations are inlined, the rest use the operation's function. */
+    static double eval(LogicOp op, double a, double b){
+        return switch(op){
+            case add -> a + b;
+            case sub -> a - b;
+            case mul -> a * b;
+            case div -> a / b;
+            case idiv -> Math.floor(a / b);
+            case mod -> a % b;
+            case equal -> Math.abs(a - b) < 0.000001 ? 1 : 0;
+            case notEqual -> Math.abs(a - b) < 0.000001 ? 0 : 1;
+            case land -> a != 0 && b != 0 ? 1 : 0;
+            case lessThan -> a < b ? 1 : 0;
+            case lessThanEq -> a <= b ? 1 : 0;
+            case greaterThan -> a > b ? 1 : 0;
+            case greaterThanEq -> a >= b ? 1 : 0;
+            case shl -> (long)a << (long)b;
+            case shr -> (long)a >> (long)b;
+            case or -> (long)a | (long)b;
+            case and -> (long)a & (long)b;
+            case xor -> (long)a ^ (long)b;
+            case max -> Math.max(a, b);
+            case min -> Math.min(a, b);
+            default -> op.function2.get(a, b);
+        };
+    }
+
+    /** Evaluates a numeric condition. Common conditions are inlined, the rest use the condition's function. */
+    static boolean compare(ConditionOp op, double a, double b){
+        return switch(op){
+            case equal -> Math.abs(a - b) < 0.000001;
+            case notEqual -> Math.abs(a - b) >= 0.000001;
+            case lessThan -> a < b;
+            case lessThanEq -> a <= b;
+            case greaterThan -> a > b;
+            case greaterThanEq -> a >= b;
+            default -> op.function.get(a, b);
+        };
+    }
+
+    //region specialized instructions
+
+    /** Sets a variable to a numeric constant. */
+    public static class SetNumI implements LInstruction{
+        public final double value;
+        public final Var to;
+
+        public SetNumI(double value, Var to){
+            this.value = value;
+            this.to = to;
+        }
+
+        @Override
+        public void run(LExecutor exec){
+            to.numval = value;
+            to.isobj = false;
+        }
+
+        @Override
+        public boolean concurrent(LExecutor exec){
+            return true;
+        }
+    }
+
+    /** Copies a variable to another. */
+    public static class SetVarI implements LInstruction{
+        public final Var from, to;
+
+        public SetVarI(Var from, Var to){
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public void run(LExecutor exec){
+            if(from.isobj){
+                to.objval = from.objval;
+                to.isobj = true;
+            }else{
+                to.numval = invalid(from.numval) ? 0 : from.numval;
+                to.isobj = false;
+            }
+        }
+
+        @Override
+        public boolean concurrent(LExecutor exec){
+            return true;
+        }
+    }
+
+    public static class UnaryOpI implements LInstruction{
+        public final LogicOp op;
+        public final Var a, dest;
+
+        public UnaryOpI(LogicOp op, Var a, Var dest){
+            this.op = op;
+            this.a = a;
+            this.dest = dest;
+        }
+
+        @Override
+        public void run(LExecutor exec){
+            setnum(dest, op.function1.get(num(a)));
+        }
+
+        @Override
+        public boolean concurrent(LExecutor exec){
+            //the random generator is shared
+            return op != LogicOp.rand;
+        }
+
+        @Override
+        public boolean untracked(LExecutor exec){
+            return false;
+        }
+    }
+
+    /** A binary operation on two variables. */
+    public static class OpVarI implements LInstruction{
+        public final LogicOp op;
+        public final Var a, b, dest;
+
+        public OpVarI(LogicOp op, Var a, Var b, Var dest){
+            this.op = op;
+            this.a = a;
+            this.b = b;
+            this.dest = dest;
+        }
+
+        @Override
+        public void run(LExecutor exec){
+            if(op.objFunction2 != null && a.isobj && b.isobj){
+                setnum(dest, op.objFunction2.get(a.objval, b.objval));
+            }else{
+                setnum(dest, eval(op, num(a), num(b)));
+            }
+        }
+
+        @Override
+        public boolean concurrent(LExecutor exec){
+            return true;
+        }
+    }
+
+    /** A binary operation on a variable and a numeric constant. */
+    public static class OpConstI implements LInstruction{
+        public final LogicOp op;
+        public final Var a, dest;
+        public final double b;
+
+        public OpConstI(LogicOp op, Var a, double b, Var dest){
+            this.op = op;
+            this.a = a;
+            this.b = b;
+            this.dest = dest;
+        }
+
+        @Override
+        public void run(LExecutor exec){
+            setnum(dest, eval(op, num(a), b));
+        }
+
+        @Override
+        public boolean concurrent(LExecutor exec){
+            return true;
+        }
+    }
+
+    public static class JumpAlwaysI implements LInstruction{
+        public final Var counter;
+        public final int address;
+
+        public JumpAlwaysI(Var counter, int address){
+            this.counter = counter;
+            this.address = address;
+        }
+
+        @Override
+        public void run(LExecutor exec){
+            counter.numval = address;
+        }
+
+        @Override
+        public boolean concurrent(LExecutor exec){
+            return true;
+        }
+    }
+
+    /** A conditional jump comparing two variables. */
+    public static class JumpVarI implements LInstruction{
+        public final ConditionOp op;
+        public final Var a, b, counter;
+        public final int address;
+
+        public JumpVarI(ConditionOp op, Var a, Var b, Var counter, int address){
+            this.op = op;
+            this.a = a;
+            this.b = b;
+            this.counter = counter;
+            this.address = address;
+        }
+
+        @Override
+        public void run(LExecutor exec){
+            boolean cmp = op.objFunction != null && a.isobj && b.isobj ? op.objFunction.get(a.objval, b.objval) : compare(op, num(a), num(b));
+            if(cmp){
+                counter.numval = address;
+            }
+        }
+
+        @Override
+        public boolean concurrent(LExecutor exec){
+            return true;
+        }
+    }
+
+    /** A conditional jump comparing a variable to a numeric constant. */
+    public static class JumpConstI implements LInstruction{
+        public final ConditionOp op;
+        public final Var a, counter;
+        public final double b;
+        public final int address;
+
+        public JumpConstI(ConditionOp op, Var a, double b, Var counter, int address){
+            this.op = op;
+            this.a = a;
+            this.b = b;
+            this.counter = counter;
+            this.address = address;
+        }
+
+        @Override
+        public void run(LExecutor exec){
+            if(compare(op, num(a), b)){
+                counter.numval = address;
+            }
+        }
+
+        @Override
+        public boolean concurrent(LExecutor exec){
+            return true;
+        }
+    }
+
+    //endregion
+}
@@ -12,7 +12,6 @@ import mindustry.core.*;
 import mindustry.ctype.*;
 import mindustry.entities.*;
 import mindustry.game.*;
-import mindustry.game.Teams.*;
 import mindustry.gen.*;
 import mindustry.type.*;
 import mindustry.world.*;
@@ -54,6 +53,30 @@ public class LExecutor{
     public IntSet linkIds = new IntSet();
     public Team team = Team.derelict;
 
+    /** Whether instructions are running on a worker thread. Side effects are then buffered until {@link #commit()} is called. */
+    public boolean buffering;
+    /** Whether instructions running on the main thread record what they write, see {@link #runRecorded()}. */
+    public boolean recording;
+    /** Whether an instruction that changes the world in ways that are not recorded ran while recording. */
+    public boolean untracked;
+    /** Buffered side effects, in the order they happened. */
+    public Seq<Runnable> effects = new Seq<>();
+    /** World objects read while buffering. The buffered run is outdated if another processor wrote one of them earlier in the frame. */
+    public ObjectSet<Object> reads = new ObjectSet<>();
+    /** World objects written while buffering or recording. */
+    public Seq<Object> writes = new Seq<>();
+    //whether memory was written while buffering; memory can only be read again after the write is committed
+    private boolean bufferedWrite;
+
+    //processor state from before the buffered run, restored by rollback()
+    private Seq<Runnable> undo = new Seq<>();
+    private double[] savedNums = {};
+    private Object[] savedObjs = {};
+    private boolean[] savedIsObj = {};
+    private long[] savedGraphics = {};
+    private int savedGraphicsSize;
+    private String savedText = "";
+
     public boolean initialized(){
         return instructions != null && vars != null && instructions.length > 0;
     }
@@ -74,6 +97,123 @@ public class LExecutor{
         }
     }
 
+    /**
+     * Runs instructions on a worker thread, stopping before the first one that must run on the main thread.
+     * Side effects are buffered until {@link #commit()} is called.
+     * @return the number of instructions that were run.
+     */
+    public int runConcurrent(int steps){
+        save();
+        buffering = true;
+        int ran = 0;
+        while(ran < steps && next().concurrent(this)){
+            runOnce();
+            ran ++;
+        }
+        buffering = false;
+        return ran;
+    }
+
+    /** Applies all buffered side effects. Must be called on the main thread. */
+    public void commit(){
+        for(int i = 0; i < effects.size; i++){
+            effects.get(i).run();
+        }
+        effects.clear();
+        reads.clear();
+        undo.clear();
+        bufferedWrite = false;
+    }
+
+    /** Discards the buffered side effects and restores the state from before the last buffered run, so that its instructions can run again. */
+    public void rollback(){
+        for(int i = 0; i < vars.length; i++){
+            Var v = vars[i];
+            if(v.constant) continue;
+            v.numval = savedNums[i];
+            v.objval = savedObjs[i];
+            v.isobj = savedIsObj[i];
+        }
+
+        graphicsBuffer.clear();
+        graphicsBuffer.addAll(savedGraphics, 0, savedGraphicsSize);
+        textBuffer.setLength(0);
+        textBuffer.append(savedText);
+
+        for(int i = undo.size - 1; i >= 0; i--){
+            undo.get(i).run();
+        }
+
+        effects.clear();
+        reads.clear();
+        writes.clear();
+        undo.clear();
+        bufferedWrite = false;
+    }
+
+    /** @return whether the last buffered run read any of these objects. */
+    public boolean readAny(ObjectSet<Object> written){
+        if(reads.size > written.size){
+            for(Object o : written){
+                if(reads.contains(o)) return true;
+            }
+        }else{
+            for(Object o : reads){
+                if(written.contains(o)) return true;
+            }
+        }
+        return false;
+    }
+
+    /** Runs a single instruction on the main thread, recording what it writes for the processors that come after this one. */
+    public void runRecorded(){
+        if(next().untracked(this)) untracked = true;
+        runOnce();
+    }
+
+    /** Records a world object that is read, if its state may have been changed by another processor earlier in the frame. */
+    public void read(Object target){
+        if(buffering) reads.add(target);
+    }
+
+    /** Records a world object that is written. */
+    public void wrote(Object target){
+        if(buffering || recording) writes.add(target);
+    }
+
+    /** Adds an action that restores the state of an instruction if the buffered run is rolled back. */
+    public void undo(Runnable action){
+        if(buffering) undo.add(action);
+    }
+
+    private void save(){
+        if(savedNums.length != vars.length){
+            savedNums = new double[vars.length];
+            savedObjs = new Object[vars.length];
+            savedIsObj = new boolean[vars.length];
+        }
+
+        for(int i = 0; i < vars.length; i++){
+            Var v = vars[i];
+            savedNums[i] = v.numval;
+            savedObjs[i] = v.objval;
+            savedIsObj[i] = v.isobj;
+        }
+
+        if(savedGraphics.length < graphicsBuffer.size) savedGraphics = new long[graphicsBuffer.items.length];
+        System.arraycopy(graphicsBuffer.items, 0, savedGraphics, 0, graphicsBuffer.size);
+        savedGraphicsSize = graphicsBuffer.size;
+        savedText = textBuffer.length() == 0 ? "" : textBuffer.toString();
+    }
+
+    /** @return the instruction that runs next. */
+    private LInstruction next(){
+        if(vars[varCounter].numval >= instructions.length || vars[varCounter].numval < 0){
+            vars[varCounter].numval = 0;
+        }
+        return instructions[(int)vars[varCounter].numval];
+    }
+
     public void load(String data, int maxInstructions){
         load(LAssembler.assemble(data, maxInstructions));
     }
@@ -81,7 +221,6 @@ public class LExecutor{
     /** Loads with a specified assembler. Resets all variables. */
     public void load(LAssembler builder){
         vars = new Var[builder.vars.size];
-        instructions = builder.instructions;
 
         builder.vars.each((name, var) -> {
             Var dest = new Var(name);
@@ -97,6 +236,9 @@ public class LExecutor{
                 dest.objval = var.value;
             }
         });
+
+        //instructions are specialized against the variables, so this must happen after they are created
+        instructions = LCompiler.compile(this, builder.instructions);
     }
 
     //region utility
@@ -189,6 +331,19 @@ public class LExecutor{
 
     public interface LInstruction{
         void run(LExecutor exec);
+
+        /**
+         * @return whether this instruction can run on a worker thread. It may only read world state, and must buffer its side effects while {@link LExecutor#buffering}.
+         * World objects that it reads or writes must be passed to {@link LExecutor#read} and {@link LExecutor#wrote}, and any other state it changes must be restorable with {@link LExecutor#undo}.
+         */
+        default boolean concurrent(LExecutor exec){
+            return false;
+        }
+
+        /** @return whether this instruction may change the world without passing what it changes to {@link LExecutor#wrote}, e.g. by controlling units. */
+        default boolean untracked(LExecutor exec){
+            return !concurrent(exec);
+        }
     }
 
     /** Binds the processor to a unit based on some filters. */
@@ -538,13 +693,37 @@ public class LExecutor{
         public void run(LExecutor exec){
             Object obj = exec.obj(target);
             if(obj instanceof Building b && b.team == exec.team && exec.linkIds.contains(b.id) && (type.cooldown <= 0 || timer.get(type.cooldown))){
-                if(type.isObj){
-                    b.control(type, exec.obj(p1), exec.num(p2), exec.num(p3), exec.num(p4));
+                LAccess type = this.type;
+                Object o1 = type.isObj ? exec.obj(p1) : null;
+                double n1 = exec.num(p1), n2 = exec.num(p2), n3 = exec.num(p3), n4 = exec.num(p4);
+
+                exec.wrote(b);
+                if(exec.buffering){
+                    exec.effects.add(() -> control(b, type, o1, n1, n2, n3, n4));
                 }else{
-                    b.control(type, exec.num(p1), exec.num(p2), exec.num(p3), exec.num(p4));
+                    control(b, type, o1, n1, n2, n3, n4);
                 }
             }
         }
+
+        static void control(Building b, LAccess type, Object o1, double n1, double n2, double n3, double n4){
+            if(type.isObj){
+                b.control(type, o1, n2, n3, n4);
+            }else{
+                b.control(type, n1, n2, n3, n4);
+            }
+        }
+
+        @Override
+        public boolean concurrent(LExecutor exec){
+            //the cooldown timer can not be rolled back
+            return type.cooldown <= 0;
+        }
+
+        @Override
+        public boolean untracked(LExecutor exec){
+            return false;
+        }
     }
 
     public static class GetLinkI implements LInstruction{
@@ -564,6 +743,11 @@ public class LExecutor{
 
             exec.setobj(output, address >= 0 && address < exec.links.length ? exec.links[address] : null);
         }
+
+        @Override
+        public boolean concurrent(LExecutor exec){
+            return true;
+        }
     }
 
     public static class ReadI implements LInstruction{
@@ -584,10 +768,21 @@ public class LExecutor{
             Building from = exec.building(target);
 
             if(from instanceof MemoryBuild mem && from.team == exec.team){
-
+                exec.read(mem);
                 exec.setnum(output, address < 0 || address >= mem.memory.length ? 0 : mem.memory[address]);
             }
         }
+
+        @Override
+        public boolean concurrent(LExecutor exec){
+            //a buffered write may have changed the value
+            return !exec.bufferedWrite;
+        }
+
+        @Override
+        public boolean untracked(LExecutor exec){
+            return false;
+        }
     }
 
     public static class WriteI implements LInstruction{
@@ -610,11 +805,23 @@ public class LExecutor{
             if(from instanceof MemoryBuild mem && from.team == exec.team){
 
                 if(address >= 0 && address < mem.memory.length){
-                    mem.memory[address] = exec.num(value);
+                    exec.wrote(mem);
+                    if(exec.buffering){
+                        double num = exec.num(value);
+                        exec.bufferedWrite = true;
+                        exec.effects.add(() -> mem.memory[address] = num);
+                    }else{
+                        mem.memory[address] = exec.num(value);
+                    }
                 }
 
             }
         }
+
+        @Override
+        public boolean concurrent(LExecutor exec){
+            return true;
+        }
     }
 
     public static class SenseI implements LInstruction{
@@ -636,6 +843,7 @@ public class LExecutor{
 
             //note that remote units/buildings can be sensed as well
             if(target instanceof Senseable se){
+                exec.read(se);
                 if(sense instanceof Content co){
                     exec.setnum(to, se.sense(co));
                 }else if(sense instanceof LAccess la){
@@ -653,6 +861,11 @@ public class LExecutor{
                 exec.setobj(to, null);
             }
         }
+
+        @Override
+        public boolean concurrent(LExecutor exec){
+            return true;
+        }
     }
 
     public static class RadarI implements LInstruction{
@@ -703,16 +916,7 @@ public class LExecutor{
                     best = null;
                     bestValue = 0;
 
-                    if(enemies){
-                        Seq<TeamData> data = state.teams.present;
-                        for(int i = 0; i < data.size; i++){
-                            if(data.items[i].team != r.team()){
-                                find(r, range, sortDir, data.items[i].team);
-                            }
-                        }
-                    }else{
-                        find(r, range, sortDir, r.team());
-                    }
+                    find(r, range, sortDir, enemies);
 
                     lastTarget = targeted = best;
                 }else{
@@ -725,23 +929,33 @@ public class LExecutor{
             }
         }
 
-        void find(Ranged b, float range, int sortDir, Team team){
-            Units.nearby(team, b.x(), b.y(), range, u -> {
-                if(!u.within(b, range)) return;
+        void find(Ranged b, float range, int sortDir, boolean enemies){
+            //candidates are shared with other processors and turrets querying the same area this frame
+            Seq<Unit> units = UnitQueryCache.get(b.team(), enemies, b.x() - range, b.y() - range, range*2f, range*2f);
+
+            for(int i = 0; i < units.size; i++){
+                Unit u = units.items[i];
+                if(!u.within(b, range)) continue;
 
                 boolean valid =
                     target1.func.get(b.team(), u) &&
                     target2.func.get(b.team(), u) &&
                     target3.func.get(b.team(), u);
 
-                if(!valid) return;
+                if(!valid) continue;
 
                 float val = sort.func.get(b, u) * sortDir;
                 if(val > bestValue || best == null){
                     bestValue = val;
                     best = u;
                 }
-            });
+            }
+        }
+
+        @Override
+        public boolean untracked(LExecutor exec){
+            //radar only reads the world
+            return false;
         }
     }
 
@@ -771,6 +985,11 @@ public class LExecutor{
                 }
             }
         }
+
+        @Override
+        public boolean concurrent(LExecutor exec){
+            return true;
+        }
     }
 
     public static class OpI implements LInstruction{
@@ -807,6 +1026,17 @@ public class LExecutor{
 
             }
         }
+
+        @Override
+        public boolean concurrent(LExecutor exec){
+            //the random generator is shared
+            return op != LogicOp.rand;
+        }
+
+        @Override
+        public boolean untracked(LExecutor exec){
+            return false;
+        }
     }
 
     public static class EndI implements LInstruction{
@@ -815,11 +1045,21 @@ public class LExecutor{
         public void run(LExecutor exec){
             exec.var(varCounter).numval = exec.instructions.length;
         }
+
+        @Override
+        public boolean concurrent(LExecutor exec){
+            return true;
+        }
     }
 
     public static class NoopI implements LInstruction{
         @Override
         public void run(LExecutor exec){}
+
+        @Override
+        public boolean concurrent(LExecutor exec){
+            return true;
+        }
     }
 
     public static class DrawI implements LInstruction{
@@ -857,6 +1097,11 @@ public class LExecutor{
                 exec.graphicsBuffer.add(DisplayCmd.get(type, exec.numi(x), exec.numi(y), num1, exec.numi(p2), exec.numi(p3), exec.numi(p4)));
             }
         }
+
+        @Override
+        public boolean concurrent(LExecutor exec){
+            return true;
+        }
     }
 
     public static class DrawFlushI implements LInstruction{
@@ -875,14 +1120,30 @@ public class LExecutor{
             if(Vars.headless) return;
 
             if(exec.building(target) instanceof LogicDisplayBuild d && d.team == exec.team){
-                if(d.commands.size + exec.graphicsBuffer.size < maxDisplayBuffer){
-                    for(int i = 0; i < exec.graphicsBuffer.size; i++){
-                        d.commands.addLast(exec.graphicsBuffer.items[i]);
-                    }
+                exec.wrote(d);
+                if(exec.buffering){
+                    long[] commands = new long[exec.graphicsBuffer.size];
+                    System.arraycopy(exec.graphicsBuffer.items, 0, commands, 0, commands.length);
+                    exec.effects.add(() -> flush(d, commands, commands.length));
+                }else{
+                    flush(d, exec.graphicsBuffer.items, exec.graphicsBuffer.size);
                 }
                 exec.graphicsBuffer.clear();
             }
         }
+
+        static void flush(LogicDisplayBuild d, long[] commands, int size){
+            if(d.commands.size + size < maxDisplayBuffer){
+                for(int i = 0; i < size; i++){
+                    d.commands.addLast(commands[i]);
+                }
+            }
+        }
+
+        @Override
+        public boolean concurrent(LExecutor exec){
+            return true;
+        }
     }
 
     public static class PrintI implements LInstruction{
@@ -922,6 +1183,11 @@ public class LExecutor{
                 }
             }
         }
+
+        @Override
+        public boolean concurrent(LExecutor exec){
+            return true;
+        }
     }
 
     public static class PrintFlushI implements LInstruction{
@@ -938,13 +1204,26 @@ public class LExecutor{
         public void run(LExecutor exec){
 
             if(exec.building(target) instanceof MessageBuild d && d.team == exec.team){
-
-                d.message.setLength(0);
-                d.message.append(exec.textBuffer, 0, Math.min(exec.textBuffer.length(), maxTextBuffer));
+                exec.wrote(d);
+                if(exec.buffering){
+                    String text = exec.textBuffer.substring(0, Math.min(exec.textBuffer.length(), maxTextBuffer));
+                    exec.effects.add(() -> {
+                        d.message.setLength(0);
+                        d.message.append(text);
+                    });
+                }else{
+                    d.message.setLength(0);
+                    d.message.append(exec.textBuffer, 0, Math.min(exec.textBuffer.length(), maxTextBuffer));
+                }
 
                 exec.textBuffer.setLength(0);
             }
         }
+
+        @Override
+        public boolean concurrent(LExecutor exec){
+            return true;
+        }
     }
 
     public static class JumpI implements LInstruction{
@@ -982,6 +1261,11 @@ public class LExecutor{
                 }
             }
         }
+
+        @Override
+        public boolean concurrent(LExecutor exec){
+            return true;
+        }
     }
 
     public static class WaitI implements LInstruction{
@@ -1001,6 +1285,9 @@ public class LExecutor{
 
         @Override
         public void run(LExecutor exec){
+            float lastTime = curTime;
+            long lastFrame = frameId;
+
             if(curTime >= exec.num(value)){
                 curTime = 0f;
             }else{
@@ -1012,6 +1299,18 @@ public class LExecutor{
                 curTime += Time.delta / 60f;
                 frameId = Core.graphics.getFrameId();
             }
+
+            if(curTime != lastTime || frameId != lastFrame){
+                exec.undo(() -> {
+                    curTime = lastTime;
+                    frameId = lastFrame;
+                });
+            }
+        }
+
+        @Override
+        public boolean concurrent(LExecutor exec){
+            return true;
         }
     }
 
@@ -192,7 +192,8 @@ public class SectorDamage{
         boolean found = false;
 
         if(field != null && field.weights != null){
-            int[][] weights = field.weights;
+            int[] weights = field.weights;
+            int width = field.width;
             int count = 0;
             Tile current = start;
             while(count < world.width() * world.height()){
@@ -202,8 +203,8 @@ public class SectorDamage{
                     int nx = cx + p.x, ny = cy + p.y;
 
                     Tile other = world.tile(nx, ny);
-                    if(other != null && weights[nx][ny] < minCost && weights[nx][ny] != -1){
-                       minCost = weights[nx][ny];
+                    if(other != null && weights[ny * width + nx] < minCost && weights[ny * width + nx] != -1){
+                       minCost = weights[ny * width + nx];
                        current = other;
                     }
                 }
@@ -479,6 +479,11 @@ public class Administration{
         autosave("Whether the periodically save the map when playing.", false),
         autosaveAmount("The maximum amount of autosaves. Older ones get replaced.", 10),
         autosaveSpacing("Spacing between autosaves in seconds.", 60 * 5),
+        snapshotViewMargin("Extra distance around each player's view, in world units, in which units are synced on every snapshot.", 160),
+        snapshotFarRate("Units outside a player's view are synced once every this many snapshots. 0 to stop syncing them and hide them on the client.", 4),
+        snapshotDelta("Whether entity snapshots only contain data that changed since the last state each player received.", true),
+        worldCacheTime("How long compressed world data is reused for joining players, in seconds. Reused data does not include building state that changed since it was written. 0 to only share data that is still being compressed.", 0),
+        pathfinderThreads("Number of threads used to update pathfinding flow fields. 0 to use all available cores.", 0),
         debug("Enable debug logging", false, () -> {
             Log.level = debug() ? LogLevel.debug : LogLevel.info;
         });
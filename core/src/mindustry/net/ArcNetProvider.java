@@ -15,11 +15,18 @@ import java.io.*;
 import java.net.*;
 import java.nio.*;
 import java.nio.channels.*;
+import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 import static mindustry.Vars.*;
 
 public class ArcNetProvider implements NetProvider{
+    /** Size of the server's write buffer for each connection, in bytes. Streams are sent based on how full it is. */
+    static final int serverWriteBuffer = 32768;
+    /** Size of the buffers that single objects are serialized into, in bytes. */
+    static final int objectBuffer = 8192;
+
     final Client client;
     final Prov<DatagramPacket> packetSupplier = () -> new DatagramPacket(new byte[512], 512);
 
@@ -27,10 +34,15 @@ public class ArcNetProvider implements NetProvider{
     final CopyOnWriteArrayList<ArcConnection> connections = new CopyOnWriteArrayList<>();
     Thread serverThread;
 
+    //objects received by the client; handled in bulk on the main thread, as are the queues of each server connection
+    final ConcurrentLinkedQueue<Object> clientReceived = new ConcurrentLinkedQueue<>();
+    final AtomicBoolean clientPosted = new AtomicBoolean(), serverPosted = new AtomicBoolean();
+    final Runnable handleClient = this::handleClient, handleServer = this::handleServer;
+
     public ArcNetProvider(){
         ArcNet.errorHandler = e -> Log.debug(Strings.getStackTrace(e));
 
-        client = new Client(8192, 8192, new PacketSerializer());
+        client = new Client(8192, objectBuffer, new PacketSerializer());
         client.setDiscoveryPacket(packetSupplier);
         client.addListener(new NetListener(){
             @Override
@@ -39,7 +51,7 @@ public class ArcNetProvider implements NetProvider{
                 c.addressTCP = connection.getRemoteAddressTCP().getAddress().getHostAddress();
                 if(connection.getRemoteAddressTCP() != null) c.addressTCP = connection.getRemoteAddressTCP().toString();
 
-                Core.app.post(() -> net.handleClientReceived(c));
+                receivedClient(c);
             }
 
             @Override
@@ -50,25 +62,18 @@ public class ArcNetProvider implements NetProvider{
 
                 Disconnect c = new Disconnect();
                 c.reason = reason.toString();
-                Core.app.post(() -> net.handleClientReceived(c));
+                receivedClient(c);
             }
 
             @Override
             public void received(Connection connection, Object object){
                 if(object instanceof FrameworkMessage) return;
 
-                Core.app.post(() -> {
-                    try{
-                        net.handleClientReceived(object);
-                    }catch(Throwable e){
-                        net.handleException(e);
-                    }
-                });
-
+                receivedClient(object);
             }
         });
 
-        server = new Server(32768, 8192, new PacketSerializer());
+        server = new Server(serverWriteBuffer, objectBuffer, new PacketSerializer());
         server.setMulticast(multicastGroup, multicastPort);
         server.setDiscoveryHandler((address, handler) -> {
             ByteBuffer buffer = NetworkIO.writeServerData();
@@ -90,7 +95,7 @@ public class ArcNetProvider implements NetProvider{
                 Log.debug("&bReceived connection: @", c.addressTCP);
 
                 connections.add(kn);
-                Core.app.post(() -> net.handleServerReceived(kn, c));
+                receivedServer(kn, c);
             }
 
             @Override
@@ -101,10 +106,8 @@ public class ArcNetProvider implements NetProvider{
                 Disconnect c = new Disconnect();
                 c.reason = reason.toString();
 
-                Core.app.post(() -> {
-                    net.handleServerReceived(k, c);
-                    connections.remove(k);
-                });
+                //the connection is removed once this is handled
+                receivedServer(k, c);
             }
 
             @Override
@@ -112,17 +115,59 @@ public class ArcNetProvider implements NetProvider{
                 ArcConnection k = getByArcID(connection.getID());
                 if(object instanceof FrameworkMessage || k == null) return;
 
-                Core.app.post(() -> {
-                    try{
-                        net.handleServerReceived(k, object);
-                    }catch(Throwable e){
-                        e.printStackTrace();
-                    }
-                });
+                receivedServer(k, object);
             }
         });
     }
 
+    /** Queues an object received by the client. Called from the network thread. */
+    void receivedClient(Object object){
+        clientReceived.add(object);
+        //only post once for everything received before the queue is handled
+        if(clientPosted.compareAndSet(false, true)){
+            Core.app.post(handleClient);
+        }
+    }
+
+    /** Queues an object received from a connection. Called from the network thread. */
+    void receivedServer(ArcConnection con, Object object){
+        con.received.add(object);
+        if(serverPosted.compareAndSet(false, true)){
+            Core.app.post(handleServer);
+        }
+    }
+
+    void handleClient(){
+        //reset first, so that anything received while handling posts again
+        clientPosted.set(false);
+
+        for(Object object; (object = clientReceived.poll()) != null;){
+            try{
+                net.handleClientReceived(object);
+            }catch(Throwable e){
+                net.handleException(e);
+            }
+        }
+    }
+
+    void handleServer(){
+        serverPosted.set(false);
+
+        for(ArcConnection con : connections){
+            for(Object object; (object = con.received.poll()) != null;){
+                try{
+                    net.handleServerReceived(con, object);
+                }catch(Throwable e){
+                    e.printStackTrace();
+                }
+
+                if(object instanceof Disconnect){
+                    connections.remove(con);
+                }
+            }
+        }
+    }
+
     private static boolean isLocal(InetAddress addr){
         if(addr.isAnyLocalAddress() || addr.isLoopbackAddress()) return true;
 
@@ -271,6 +316,8 @@ public class ArcNetProvider implements NetProvider{
 
     class ArcConnection extends NetConnection{
         public final Connection connection;
+        /** Objects received from this connection that have not been handled yet. */
+        final ConcurrentLinkedQueue<Object> received = new ConcurrentLinkedQueue<>();
 
         public ArcConnection(String address, Connection connection){
             super(address);
@@ -284,27 +331,7 @@ public class ArcNetProvider implements NetProvider{
 
         @Override
         public void sendStream(Streamable stream){
-            connection.addListener(new InputStreamSender(stream.stream, 512){
-                int id;
-
-                @Override
-                protected void start(){
-                    //send an object so the receiving side knows how to handle the following chunks
-                    StreamBegin begin = new StreamBegin();
-                    begin.total = stream.stream.available();
-                    begin.type = Registrator.getID(stream.getClass());
-                    connection.sendTCP(begin);
-                    id = begin.id;
-                }
-
-                @Override
-                protected Object next(byte[] bytes){
-                    StreamChunk chunk = new StreamChunk();
-                    chunk.id = id;
-                    chunk.data = bytes;
-                    return chunk; //wrap the byte[] with an object so the receiving side knows how to handle it.
-                }
-            });
+            connection.addListener(new StreamSender(stream));
         }
 
         @Override
@@ -331,6 +358,78 @@ public class ArcNetProvider implements NetProvider{
         }
     }
 
+    /**
+     * Sends a stream in chunks whenever the connection's write buffer has room.
+     * Chunks grow while the socket keeps up and shrink when the buffer backs up.
+     * Chunk buffers are shared, as all listeners of the server are called from its update thread.
+     */
+    static class StreamSender implements NetListener{
+        /** Chunk sizes, in powers of two. The largest one must fit the object buffer of clients. */
+        static final int minChunkShift = 9, maxChunkShift = 12;
+        /** How much of the write buffer streams may fill; the rest is left for other packets. */
+        static final int writeLimit = serverWriteBuffer / 2;
+        static final byte[][] buffers = new byte[maxChunkShift - minChunkShift + 1][];
+
+        final Streamable stream;
+        final StreamChunk chunk = new StreamChunk();
+        int shift = minChunkShift;
+        boolean started;
+
+        StreamSender(Streamable stream){
+            this.stream = stream;
+        }
+
+        @Override
+        public void idle(Connection connection){
+            try{
+                if(!started){
+                    started = true;
+
+                    //send an object so the receiving side knows how to handle the following chunks
+                    StreamBegin begin = new StreamBegin();
+                    begin.total = stream.stream.available();
+                    begin.type = Registrator.getID(stream.getClass());
+                    connection.sendTCP(begin);
+                    chunk.id = begin.id;
+                }
+
+                //an empty buffer means the socket keeps up, so larger chunks can be sent
+                if(connection.getTcpWriteBufferSize() == 0){
+                    shift = Math.min(shift + 1, maxChunkShift);
+                }else{
+                    shift = Math.max(shift - 1, minChunkShift);
+                }
+
+                int size = 1 << shift;
+                byte[] buffer = buffers[shift - minChunkShift];
+                if(buffer == null) buffer = buffers[shift - minChunkShift] = new byte[size];
+
+                while(connection.getTcpWriteBufferSize() + size <= writeLimit){
+                    int read = 0;
+                    for(int r; read < size && (r = stream.stream.read(buffer, read, size - read)) > 0;){
+                        read += r;
+                    }
+
+                    if(read <= 0){
+                        connection.removeListener(this);
+                        return;
+                    }
+
+                    //only the last chunk may be smaller
+                    chunk.data = read == size ? buffer : Arrays.copyOf(buffer, read);
+                    connection.sendTCP(chunk);
+                }
+            }catch(IOException e){
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public void disconnected(Connection connection, DcReason reason){
+            connection.removeListener(this);
+        }
+    }
+
     @SuppressWarnings("unchecked")
     public static class PacketSerializer implements NetSerializer{
 
@@ -28,6 +28,12 @@ public abstract class NetConnection{
 
     public boolean hasConnected, hasBegunConnecting, hasDisconnected;
     public float viewWidth, viewHeight, viewX, viewY;
+    /** Number of entity snapshots written to this connection. */
+    public int snapshotsSent;
+    /** IDs of units that this connection's client knows about as of the current and last entity snapshot. */
+    public IntSet syncedUnits = new IntSet(), lastSyncedUnits = new IntSet();
+    /** Entity states this connection has acknowledged. */
+    public final SnapshotBaselines baselines = new SnapshotBaselines();
 
     public NetConnection(String address){
         this.address = address;
@@ -15,12 +15,14 @@ import mindustry.net.Administration.*;
 import java.io.*;
 import java.nio.*;
 import java.util.*;
+import java.util.zip.*;
 
 import static mindustry.Vars.*;
 
 public class NetworkIO{
 
-    public static void writeWorld(Player player, OutputStream os){
+    /** Writes the part of the world data that is specific to a player. */
+    public static void writeWorldHeader(Player player, OutputStream os){
 
         try(DataOutputStream stream = new DataOutputStream(os)){
             //write all researched content to rules if hosting
@@ -43,17 +45,35 @@ public class NetworkIO{
 
             stream.writeInt(player.id);
             player.write(Writes.get(stream));
+        }catch(IOException e){
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** Writes the part of the world data that is the same for every player. */
+    public static void writeWorldMap(OutputStream os){
 
+        try(DataOutputStream stream = new DataOutputStream(os)){
             SaveIO.getSaveWriter().writeContentHeader(stream);
-            SaveIO.getSaveWriter().writeMap(stream);
+            SaveIO.getSaveWriter().writeNetworkMap(stream);
         }catch(IOException e){
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Loads world data sent by a server: the length of the compressed header, the compressed header and the compressed map.
+     * @see #writeWorldHeader(Player, OutputStream)
+     * @see #writeWorldMap(OutputStream)
+     */
     public static void loadWorld(InputStream is){
 
-        try(DataInputStream stream = new DataInputStream(is)){
+        try(DataInputStream input = new DataInputStream(is)){
+            byte[] header = new byte[input.readInt()];
+            input.readFully(header);
+
+            DataInputStream stream = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(header)));
+
             Time.clear();
             state.rules = JsonIO.read(Rules.class, stream.readUTF());
             state.map = new Map(SaveIO.getSaveWriter().readStringMap(stream));
@@ -68,8 +88,10 @@ public class NetworkIO{
             player.id = id;
             player.add();
 
-            SaveIO.getSaveWriter().readContentHeader(stream);
-            SaveIO.getSaveWriter().readMap(stream, world.context);
+            DataInputStream map = new DataInputStream(new InflaterInputStream(input));
+
+            SaveIO.getSaveWriter().readContentHeader(map);
+            SaveIO.getSaveWriter().readMap(map, world.context);
         }catch(IOException e){
             throw new RuntimeException(e);
         }finally{
@@ -75,14 +75,20 @@ public class Packets{
 
         public byte[] bytes;
         public int length;
+        /** Buffer for received data, kept when this packet is pooled. Separate from bytes, which may be a shared write buffer. */
+        private byte[] readBuffer = {};
 
         @Override
         public void read(ByteBuffer buffer){
             type = buffer.get();
             priority = buffer.get();
             short writeLength = buffer.getShort();
-            bytes = new byte[writeLength];
-            buffer.get(bytes);
+            if(readBuffer.length < writeLength){
+                readBuffer = new byte[Math.max(writeLength, 64)];
+            }
+            bytes = readBuffer;
+            length = writeLength;
+            buffer.get(bytes, 0, writeLength);
         }
 
         @Override
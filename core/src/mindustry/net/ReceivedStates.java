@@ -0,0 +1,120 @@
+package mindustry.net;
+
+import arc.struct.*;
+import arc.util.*;
+import mindustry.gen.*;
+
+import java.util.*;
+
+/**
+ * Client-side history of received entity states, used to decode delta snapshots.
+ * Also tracks which snapshot packets have been received, for acknowledgement.
+ * @see SnapshotBaselines
+ */
+public class ReceivedStates{
+    /** Maximum number of states remembered per entity. Entities are written at most once per sync tick, and the server never uses baselines older than this many ticks. */
+    private static final int maxStates = SnapshotBaselines.maxAge;
+    private static final int ackWindow = SnapshotBaselines.ackWindow;
+
+    private final IntMap<EntityStates> states = new IntMap<>();
+    private int received;
+    //whether each of the last packets was received, indexed by sequence modulo the window
+    private final boolean[] receivedPackets = new boolean[ackWindow];
+    private final byte[] ackBytes = new byte[ackWindow / 8];
+
+    /** Newest received packet, or -1 if none have been received. */
+    public int latest = -1;
+
+    /** Marks a packet as received. */
+    public void received(int seq){
+        if(seq > latest){
+            //packets between the last newest packet and this one have not been received (yet)
+            for(int i = Math.max(latest + 1, seq - ackWindow + 1); i < seq; i++){
+                receivedPackets[i & (ackWindow - 1)] = false;
+            }
+            receivedPackets[seq & (ackWindow - 1)] = true;
+            latest = seq;
+        }else if(seq < latest && latest - seq < ackWindow){
+            receivedPackets[seq & (ackWindow - 1)] = true;
+        }
+
+        //drop entities that no longer exist
+        if(++received % 256 == 0){
+            prune();
+        }
+    }
+
+    /**
+     * @return which packets before {@link #latest} were received: bit i of byte i / 8 is set if packet latest - 1 - i was received.
+     * Trailing empty bytes are omitted.
+     */
+    public byte[] acks(){
+        int length = 0;
+        Arrays.fill(ackBytes, (byte)0);
+
+        //the oldest slot of the window is shared with the latest packet
+        for(int i = 0; i < ackWindow - 1 && latest - 1 - i >= 0; i++){
+            if(receivedPackets[(latest - 1 - i) & (ackWindow - 1)]){
+                ackBytes[i / 8] |= 1 << (i % 8);
+                length = i / 8 + 1;
+            }
+        }
+
+        return Arrays.copyOf(ackBytes, length);
+    }
+
+    /** @return the state of an entity that was received in the specified packet, or null if it is not known. */
+    public @Nullable byte[] get(int id, int seq){
+        EntityStates entity = states.get(id);
+        if(entity == null) return null;
+
+        for(int i = 0; i < entity.size; i++){
+            if(entity.sequences[i] == seq) return entity.states[i];
+        }
+        return null;
+    }
+
+    /** Adds a received state, replacing the oldest one if there are too many. */
+    public void add(int id, int seq, byte[] state){
+        EntityStates entity = states.get(id);
+        if(entity == null) states.put(id, entity = new EntityStates());
+
+        int index = entity.size;
+        if(index >= maxStates){
+            index = 0;
+            for(int i = 1; i < entity.size; i++){
+                if(entity.sequences[i] < entity.sequences[index]) index = i;
+            }
+        }else{
+            entity.size++;
+        }
+
+        entity.sequences[index] = seq;
+        entity.states[index] = state;
+    }
+
+    public void clear(){
+        states.clear();
+        latest = -1;
+        Arrays.fill(receivedPackets, false);
+    }
+
+    private void prune(){
+        IntSeq removed = new IntSeq();
+        for(IntMap.Entry<EntityStates> entry : states){
+            if(Groups.sync.getByID(entry.key) == null){
+                removed.add(entry.key);
+            }
+        }
+
+        for(int i = 0; i < removed.size; i++){
+            states.remove(removed.items[i]);
+        }
+    }
+
+    private static class EntityStates{
+        final int[] sequences = new int[maxStates];
+        final byte[][] states = new byte[maxStates][];
+        int size;
+    }
+}
@@ -0,0 +1,222 @@
+package mindustry.net;
+
+import arc.struct.*;
+import arc.util.*;
+import mindustry.gen.*;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Server-side record of the entity states a client has acknowledged.
+ * Entity snapshots are written as deltas against these states, so unchanged data is not sent again.
+ */
+public class SnapshotBaselines{
+    /** Number of sent packets that are remembered while waiting for acknowledgement. Must be a power of two. */
+    public static final int window = 1024;
+    /** Number of packets before the newest received one that clients acknowledge; busy servers send dozens of packets per sync tick. Must be a multiple of 8. */
+    public static final int ackWindow = 512;
+    /** Baselines older than this many sync ticks are not used, as the client may have discarded them. */
+    public static final int maxAge = 32;
+
+    /** Sequence number of the next entity snapshot packet. */
+    private int sequence;
+    /** Number of sync ticks so far; every entity is written at most once per tick. */
+    private int tick;
+    /** Whether snapshots are currently written as deltas. */
+    private boolean delta = true;
+
+    //last acknowledged state of each entity, and the packet and tick it was sent in
+    private final IntMap<byte[]> states = new IntMap<>();
+    private final IntIntMap stateSequences = new IntIntMap(), stateTicks = new IntIntMap();
+    //last packet each entity was written to
+    private final IntIntMap lastSent = new IntIntMap();
+
+    //entities and states written to recent packets, and the tick they were written in
+    private final int[] sentSequences = new int[window], sentTicks = new int[window];
+    private final IntSeq[] sentIds = new IntSeq[window];
+    private final Seq<byte[]>[] sentStates = new Seq[window];
+
+    public SnapshotBaselines(){
+        for(int i = 0; i < window; i++){
+            sentSequences[i] = -1;
+            sentIds[i] = new IntSeq();
+            sentStates[i] = new Seq<>();
+        }
+    }
+
+    /** Begins a new sync tick. Must be called before the packets of each tick are written. */
+    public void beginTick(){
+        tick++;
+
+        //drop entities that no longer exist
+        if(tick % 64 == 0){
+            prune();
+        }
+    }
+
+    /**
+     * Sets whether snapshots are written as deltas. Full snapshots are not acknowledged,
+     * so all baselines are forgotten when switching modes.
+     */
+    public void setDelta(boolean delta){
+        if(this.delta != delta){
+            this.delta = delta;
+            clear();
+        }
+    }
+
+    /** Begins a new packet. @return its sequence number. */
+    public int begin(){
+        int seq = sequence++;
+        int slot = seq & (window - 1);
+
+        sentSequences[slot] = seq;
+        sentTicks[slot] = tick;
+        sentIds[slot].clear();
+        sentStates[slot].clear();
+
+        return seq;
+    }
+
+    /** Records an entity state written to the current packet. */
+    public void sent(int id, byte[] state){
+        int seq = sequence - 1, slot = seq & (window - 1);
+        sentIds[slot].add(id);
+        sentStates[slot].add(state);
+        lastSent.put(id, seq);
+    }
+
+    /** @return the acknowledged state of an entity that can be used as a baseline for the current packet, or null if there is none. */
+    public @Nullable byte[] baseline(int id){
+        int seq = stateSequences.get(id, -1);
+        return seq < 0 || tick - stateTicks.get(id, 0) >= maxAge ? null : states.get(id);
+    }
+
+    /** @return the packet the baseline of an entity was sent in. */
+    public int baselineSequence(int id){
+        return stateSequences.get(id, -1);
+    }
+
+    /** @return whether the client is known to have this exact state of an entity, with no newer states in flight. */
+    public boolean isCurrent(int id, byte[] state){
+        int seq = stateSequences.get(id, -1);
+        return seq >= 0 && lastSent.get(id, -1) == seq && Arrays.equals(states.get(id), state);
+    }
+
+    /**
+     * Marks packets as received by the client, making their states available as baselines.
+     * @param latest the newest received packet
+     * @param mask bit i (of byte i / 8) is set if packet latest - 1 - i was received; see {@link ReceivedStates#acks()}
+     */
+    public void acknowledge(int latest, byte[] mask){
+        for(int i = Math.min(mask.length * 8, ackWindow); i >= 0; i--){
+            if(i > 0 && (mask[(i - 1) / 8] & (1 << ((i - 1) % 8))) == 0) continue;
+
+            int seq = latest - i;
+            if(seq < 0 || seq >= sequence) continue;
+
+            int slot = seq & (window - 1);
+            //packets are only acknowledged once
+            if(sentSequences[slot] != seq) continue;
+            sentSequences[slot] = -1;
+
+            IntSeq ids = sentIds[slot];
+            Seq<byte[]> sent = sentStates[slot];
+            for(int j = 0; j < ids.size; j++){
+                int id = ids.items[j];
+                if(stateSequences.get(id, -1) < seq){
+                    states.put(id, sent.get(j));
+                    stateSequences.put(id, seq);
+                    stateTicks.put(id, sentTicks[slot]);
+                }
+            }
+        }
+    }
+
+    /** Forgets everything known about an entity, so that its next state is sent in full. */
+    public void remove(int id){
+        states.remove(id);
+        stateSequences.remove(id, -1);
+        stateTicks.remove(id, 0);
+        lastSent.remove(id, -1);
+    }
+
+    /** Forgets all baselines. Called when the client reloads the world. */
+    public void clear(){
+        states.clear();
+        stateSequences.clear();
+        stateTicks.clear();
+        lastSent.clear();
+        for(int i = 0; i < window; i++){
+            sentSequences[i] = -1;
+            sentIds[i].clear();
+            sentStates[i].clear();
+        }
+    }
+
+    private void prune(){
+        IntSeq removed = new IntSeq();
+        for(IntIntMap.Entry entry : lastSent){
+            if(Groups.sync.getByID(entry.key) == null){
+                removed.add(entry.key);
+            }
+        }
+
+        for(int i = 0; i < removed.size; i++){
+            remove(removed.items[i]);
+        }
+    }
+
+    /** Writes a state as the changes from a baseline of the same length: a bit mask of changed 4-byte words, followed by those words. */
+    public static void writeDelta(DataOutput out, byte[] base, byte[] state) throws IOException{
+        int words = (state.length + 3) / 4;
+
+        for(int from = 0; from < words; from += 8){
+            int bits = 0;
+            for(int w = from; w < Math.min(from + 8, words); w++){
+                if(changed(base, state, w)) bits |= 1 << (w - from);
+            }
+            out.writeByte(bits);
+        }
+
+        for(int w = 0; w < words; w++){
+            if(changed(base, state, w)){
+                out.write(state, w * 4, Math.min(4, state.length - w * 4));
+            }
+        }
+    }
+
+    /**
+     * Reads a state written with {@link #writeDelta}.
+     * @param base the baseline it was written against, or null if it is not available. The data is skipped in that case.
+     * @return the state, or null if the baseline was not available.
+     */
+    public static @Nullable byte[] readDelta(DataInput in, int length, @Nullable byte[] base) throws IOException{
+        int words = (length + 3) / 4;
+        byte[] mask = new byte[(words + 7) / 8];
+        in.readFully(mask);
+
+        byte[] state = base == null || base.length != length ? null : base.clone();
+
+        for(int w = 0; w < words; w++){
+            if((mask[w / 8] & (1 << (w % 8))) == 0) continue;
+
+            int len = Math.min(4, length - w * 4);
+            if(state == null){
+                in.skipBytes(len);
+            }else{
+                in.readFully(state, w * 4, len);
+            }
+        }
+
+        return state;
+    }
+
+    private static boolean changed(byte[] base, byte[] state, int word){
+        for(int i = word * 4, end = Math.min(i + 4, state.length); i < end; i++){
+            if(base[i] != state[i]) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,117 @@
+package mindustry.net;
+
+import arc.*;
+import arc.func.*;
+import arc.struct.*;
+import arc.util.*;
+import arc.util.io.*;
+import mindustry.game.EventType.*;
+import mindustry.net.Administration.*;
+
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+/**
+ * Compressed map data for joining players.
+ * Players that join while a copy is being compressed off the main thread share it.
+ * Finished copies are only reused for {@link Config#worldCacheTime}, as they do not track building state such as items or health;
+ * anything that changes tiles or building configuration discards them.
+ */
+public class WorldDataCache{
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "WorldData-Thread");
+        thread.setDaemon(true);
+        thread.setUncaughtExceptionHandler((t, e) -> Core.app.post(() -> { throw new RuntimeException(e); }));
+        return thread;
+    });
+
+    private @Nullable byte[] data;
+    private long writeTime;
+    //listeners waiting for the map data that is currently being compressed, and what to call if that fails
+    private @Nullable Seq<Cons<byte[]>> waiting;
+    private @Nullable Seq<Cons<Throwable>> waitingFailed;
+    //incremented when the cache is invalidated, so that outdated results are not cached
+    private int version;
+
+    public WorldDataCache(){
+        Events.on(WorldLoadEvent.class, e -> invalidate());
+        Events.on(TileChangeEvent.class, e -> invalidate());
+        Events.on(ConfigEvent.class, e -> invalidate());
+    }
+
+    /**
+     * Passes compressed map data to the listener on the main thread.
+     * The map is written if there is no recent copy, and compressed on a separate thread.
+     * @param failed called on the main thread instead of the listener if compression fails.
+     */
+    public void get(Cons<byte[]> listener, Cons<Throwable> failed){
+        if(data != null && Time.timeSinceMillis(writeTime) < Config.worldCacheTime.num() * 1000L){
+            listener.get(data);
+            return;
+        }
+
+        //the map is already being compressed
+        if(waiting != null){
+            waiting.add(listener);
+            waitingFailed.add(failed);
+            return;
+        }
+
+        //the map must be written on the main thread, as it reads game state
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        NetworkIO.writeWorldMap(raw);
+        byte[] bytes = raw.toByteArray();
+
+        Seq<Cons<byte[]>> listeners = waiting = Seq.with(listener);
+        Seq<Cons<Throwable>> failures = waitingFailed = Seq.with(failed);
+        int writeVersion = version;
+        data = null;
+        writeTime = Time.millis();
+
+        executor.execute(() -> {
+            byte[] compressed;
+            try{
+                ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4);
+                try(DeflaterOutputStream def = new FastDeflaterOutputStream(out)){
+                    def.write(bytes);
+                }
+                compressed = out.toByteArray();
+            }catch(Throwable e){
+                Core.app.post(() -> {
+                    //let the next player try again
+                    if(waiting == listeners){
+                        waiting = null;
+                        waitingFailed = null;
+                    }
+
+                    Log.err("Failed to compress world data", e);
+                    for(Cons<Throwable> f : failures){
+                        f.get(e);
+                    }
+                });
+                return;
+            }
+
+            Core.app.post(() -> {
+                if(version == writeVersion){
+                    data = compressed;
+                    waiting = null;
+                    waitingFailed = null;
+                }
+
+                for(Cons<byte[]> l : listeners){
+                    l.get(compressed);
+                }
+            });
+        });
+    }
+
+    /** Discards the cached data. Players that are already waiting for data still receive it. */
+    public void invalidate(){
+        data = null;
+        waiting = null;
+        waitingFailed = null;
+        version++;
+    }
+}
@@ -28,6 +28,16 @@ import static mindustry.Vars.*;
 
 public class LogicBlock extends Block{
     private static final int maxByteLen = 1024 * 500;
+    /** Minimum number of processors running in a frame for the next frame's instructions to run on worker threads. */
+    public static final int parallelThreshold = 32;
+
+    //processors with instructions to run at the end of this frame, in update order
+    private static final Seq<LogicBuild> pending = new Seq<>();
+    //world objects written by processors so far in the sequential pass
+    private static final ObjectSet<Object> written = new ObjectSet<>();
+    //number of processors that ran this frame, and whether this frame's processors run on worker threads
+    private static int running;
+    private static boolean parallel;
 
     public int maxInstructionScale = 5;
     public int instructionsPerTick = 1;
@@ -188,6 +198,61 @@ public class LogicBlock extends Block{
         }
     }
 
+    /**
+     * Runs the instructions of processors that were deferred this frame. Called once per frame, after all entities have updated.
+     * Processors run inside their own update, unless at least {@link #parallelThreshold} processors ran in the previous frame.
+     * In that case, instructions that do not change the world directly run on worker threads first, buffering their side effects.
+     * The processors are then finished on the main thread in update order: a processor whose worker thread run read something that
+     * an earlier processor changed this frame is rolled back and runs again, so that results do not depend on the number of processors.
+     */
+    public static void updateProcessors(){
+        parallel = running >= parallelThreshold && asyncCore != null;
+        running = 0;
+
+        if(pending.isEmpty()) return;
+
+        asyncCore.parallel(pending.size, 8, (from, to) -> {
+            for(int i = from; i < to; i++){
+                LogicBuild build = pending.get(i);
+                if(build.executor.initialized()){
+                    build.ranSteps = build.executor.runConcurrent(build.pendingSteps);
+                }
+            }
+        });
+
+        //whether an earlier processor changed the world in a way that was not recorded
+        boolean untracked = false;
+
+        for(int i = 0; i < pending.size; i++){
+            LogicBuild build = pending.get(i);
+            LExecutor exec = build.executor;
+
+            if(build.ranSteps > 0 && (untracked ? !exec.reads.isEmpty() : exec.readAny(written))){
+                exec.rollback();
+                build.ranSteps = 0;
+            }else{
+                exec.commit();
+            }
+
+            if(exec.initialized()){
+                exec.recording = true;
+                for(int j = build.ranSteps; j < build.pendingSteps; j++){
+                    exec.runRecorded();
+                }
+                exec.recording = false;
+            }
+
+            untracked |= exec.untracked;
+            exec.untracked = false;
+            written.addAll(exec.writes);
+            exec.writes.clear();
+            build.pendingSteps = build.ranSteps = 0;
+        }
+
+        written.clear();
+        pending.clear();
+    }
+
     public class LogicBuild extends Building implements Ranged{
         /** logic "source code" as list of asm statements */
         public String code = "";
@@ -195,6 +260,8 @@ public class LogicBlock extends Block{
         public float accumulator = 0;
         public Seq<LogicLink> links = new Seq<>();
         public boolean checkedDuplicates = false;
+        /** Instructions to run at the end of this frame, and how many of them already ran on a worker thread. */
+        public int pendingSteps, ranSteps;
 
         public void readCompressed(byte[] data, boolean relative){
             DataInputStream stream = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(data)));
@@ -414,12 +481,25 @@ public class LogicBlock extends Block{
 
                 if(accumulator > maxInstructionScale * instructionsPerTick) accumulator = maxInstructionScale * instructionsPerTick;
 
+                int steps = 0;
                 for(int i = 0; i < (int)accumulator; i++){
                     if(executor.initialized()){
-                        executor.runOnce();
+                        steps ++;
+                        if(parallel){
+                            pendingSteps ++;
+                        }else{
+                            executor.runOnce();
+                        }
                     }
                     accumulator --;
                 }
+
+                if(steps > 0) running ++;
+
+                //deferred instructions run at the end of the frame, together with all other processors
+                if(pendingSteps > 0){
+                    pending.add(this);
+                }
             }
         }
 
@@ -5,18 +5,32 @@ import arc.math.*;
 import arc.struct.*;
 import arc.util.*;
 import mindustry.gen.*;
+import mindustry.world.*;
 import mindustry.world.consumers.*;
+import mindustry.world.modules.*;
 
 public class PowerGraph{
     private static final Queue<Building> queue = new Queue<>();
-    private static final Seq<Building> outArray1 = new Seq<>();
     private static final Seq<Building> outArray2 = new Seq<>();
     private static final IntSet closedSet = new IntSet();
+    private static final Seq<Building> splitMembers = new Seq<>(false);
+    //graphs that may have been disconnected since the last call to updateSplits()
+    private static final Seq<PowerGraph> splitQueue = new Seq<>(false);
 
     private final Seq<Building> producers = new Seq<>(false);
     private final Seq<Building> consumers = new Seq<>(false);
     private final Seq<Building> batteries = new Seq<>(false);
     private final Seq<Building> all = new Seq<>(false);
+    //consumers with buffered power, which charge every frame
+    private final Seq<Building> buffered = new Seq<>(false);
+
+    //totals of the contributions cached in each member's power module; rates are per tick, before delta is applied
+    private double producedRate, neededRate;
+    private float batteryStored, batteryCapacity;
+    //inputs of the last power distribution; consumers only need to be updated when these change
+    private float lastDistNeeded = -1f, lastDistProduced = -1f, lastDistDelta = -1f;
+    private boolean distributeDirty = true;
+    private boolean splitQueued;
 
     private final WindowedMean powerBalance = new WindowedMean(60);
     private float lastPowerProduced, lastPowerNeeded, lastPowerStored;
@@ -88,57 +102,79 @@ public class PowerGraph{
     }
 
     public float getPowerProduced(){
-        float powerProduced = 0f;
-        for(Building producer : producers){
-            powerProduced += producer.getPowerProduction() * producer.delta();
-        }
-        return powerProduced;
+        return (float)producedRate * Time.delta;
     }
 
     public float getPowerNeeded(){
-        float powerNeeded = 0f;
-        for(Building consumer : consumers){
-            Consumers consumes = consumer.block.consumes;
-            if(consumes.hasPower()){
-                ConsumePower consumePower = consumes.getPower();
-                if(otherConsumersAreValid(consumer, consumePower)){
-                    powerNeeded += consumePower.requestedPower(consumer) * consumer.delta();
-                }
-            }
-        }
-        return powerNeeded;
+        return (float)neededRate * Time.delta;
     }
 
     public float getBatteryStored(){
-        float totalAccumulator = 0f;
-        for(Building battery : batteries){
-            Consumers consumes = battery.block.consumes;
-            if(battery.enabled && consumes.hasPower()){
-                totalAccumulator += battery.power.status * consumes.getPower().capacity;
-            }
-        }
-        return totalAccumulator;
+        return batteryStored;
     }
 
     public float getBatteryCapacity(){
-        float totalCapacity = 0f;
-        for(Building battery : batteries){
-            if(battery.enabled && battery.block.consumes.hasPower()){
-                ConsumePower power = battery.block.consumes.getPower();
-                totalCapacity += (1f - battery.power.status) * power.capacity;
-            }
-        }
-        return totalCapacity;
+        return batteryCapacity - batteryStored;
     }
 
     public float getTotalBatteryCapacity(){
-        float totalCapacity = 0f;
-        for(Building battery : batteries){
-            if(battery.enabled && battery.block.consumes.hasPower()){
-                totalCapacity += battery.block.consumes.getPower().capacity;
+        return batteryCapacity;
+    }
+
+    /**
+     * Updates the cached contribution of a building to this graph's totals.
+     * Called whenever the building updates, so the graph does not need to iterate over its members to sum them.
+     */
+    public void refresh(Building build){
+        PowerModule power = build.power;
+        if(power == null || power.graph != this) return;
+
+        Consumers consumes = build.block.consumes;
+        float production = 0f, request = 0f, stored = 0f, capacity = 0f;
+        boolean valid = false;
+
+        if(isBattery(build.block)){
+            if(build.enabled && consumes.hasPower()){
+                capacity = consumes.getPower().capacity;
+                stored = power.status * capacity;
+            }
+        }else{
+            if(build.block.outputsPower){
+                production = build.getPowerProduction() * build.timeScale();
+            }
+
+            if(build.block.consumesPower && consumes.hasPower()){
+                ConsumePower consumePower = consumes.getPower();
+                valid = otherConsumersAreValid(build, consumePower);
+                if(valid){
+                    request = consumePower.requestedPower(build) * build.timeScale();
+                }
             }
         }
-        return totalCapacity;
+
+        producedRate += production - power.lastProduction;
+        neededRate += request - power.lastRequest;
+        batteryStored += stored - power.lastStored;
+        batteryCapacity += capacity - power.lastCapacity;
+        if(valid != power.lastValid) distributeDirty = true;
+
+        power.lastProduction = production;
+        power.lastRequest = request;
+        power.lastStored = stored;
+        power.lastCapacity = capacity;
+        power.lastValid = valid;
+    }
+
+    /** Removes the cached contribution of a building from this graph's totals. */
+    private void clearContribution(Building build){
+        PowerModule power = build.power;
+        producedRate -= power.lastProduction;
+        neededRate -= power.lastRequest;
+        batteryStored -= power.lastStored;
+        batteryCapacity -= power.lastCapacity;
+        power.lastProduction = power.lastRequest = power.lastStored = power.lastCapacity = 0f;
+        power.lastValid = false;
+        distributeDirty = true;
     }
 
     public float useBatteries(float needed){
@@ -153,6 +189,7 @@ public class PowerGraph{
                 battery.power.status *= (1f-consumedPowerPercentage);
             }
         }
+        updateStored();
         return used;
     }
 
@@ -171,13 +208,30 @@ public class PowerGraph{
                 }
             }
         }
+        updateStored();
         return Math.min(excess, capacity);
     }
 
+    /** Recalculates the stored power of each battery after their status changed. This also corrects any drift in the cached total. */
+    private void updateStored(){
+        float total = 0f;
+        for(Building battery : batteries){
+            PowerModule power = battery.power;
+            power.lastStored = power.lastCapacity * power.status;
+            total += power.lastStored;
+        }
+        batteryStored = total;
+    }
+
     public void distributePower(float needed, float produced){
+        distributePower(needed, produced, true);
+    }
+
+    /** @param all whether to update unbuffered consumers. If false, only buffered consumers are charged. */
+    private void distributePower(float needed, float produced, boolean all){
         //distribute even if not needed. this is because some might be requiring power but not using it; it updates consumers
         float coverage = Mathf.zero(needed) && Mathf.zero(produced) ? 0f : Mathf.zero(needed) ? 1f : Math.min(1, produced / needed);
-        for(Building consumer : consumers){
+        for(Building consumer : all ? consumers : buffered){
             Consumers consumes = consumer.block.consumes;
             if(consumes.hasPower()){
                 ConsumePower consumePower = consumes.getPower();
@@ -189,7 +243,7 @@ public class PowerGraph{
                     }
                 }else{
                     //valid consumers get power as usual
-                    if(otherConsumersAreValid(consumer, consumePower)){
+                    if(consumer.power.lastValid){
                         consumer.power.status = coverage;
                     }else{ //invalid consumers get an estimate, if they were to activate
                         consumer.power.status = Math.min(1, produced / (needed + consumePower.usage * consumer.delta()));
@@ -218,6 +272,7 @@ public class PowerGraph{
 
         lastFrameUpdated = Core.graphics.getFrameId();
 
+        //totals are kept up to date by members as they update, so no iteration is needed here
         float powerNeeded = getPowerNeeded();
         float powerProduced = getPowerProduced();
 
@@ -244,16 +299,36 @@ public class PowerGraph{
                 }
             }
 
-            distributePower(powerNeeded, powerProduced);
+            //unbuffered consumers only change when the inputs of the distribution or the validity of a consumer change
+            boolean changed = distributeDirty || powerNeeded != lastDistNeeded || powerProduced != lastDistProduced || Time.delta != lastDistDelta;
+            distributePower(powerNeeded, powerProduced, changed);
+
+            lastDistNeeded = powerNeeded;
+            lastDistProduced = powerProduced;
+            lastDistDelta = Time.delta;
+            distributeDirty = false;
         }
     }
 
     public void addGraph(PowerGraph graph){
         if(graph == this) return;
 
+        //always move the buildings of the smaller graph, so that merging many graphs does not copy the large one repeatedly
+        if(graph.all.size > all.size){
+            graph.addGraph(this);
+            return;
+        }
+
         for(Building tile : graph.all){
-            add(tile);
+            if(tile.power.graph == graph){
+                move(tile);
+            }
         }
+
+        if(graph.splitQueued){
+            checkSplit();
+        }
+        graph.clearMembers();
     }
 
     public void add(Building build){
@@ -262,19 +337,61 @@ public class PowerGraph{
         if(build.power.graph != this || !build.power.init){
             build.power.graph = this;
             build.power.init = true;
-            all.add(build);
-
-            if(build.block.outputsPower && build.block.consumesPower && !build.block.consumes.getPower().buffered){
-                producers.add(build);
-                consumers.add(build);
-            }else if(build.block.outputsPower && build.block.consumesPower){
-                batteries.add(build);
-            }else if(build.block.outputsPower){
-                producers.add(build);
-            }else if(build.block.consumesPower){
-                consumers.add(build);
+
+            //the cached contribution belonged to the previous graph
+            PowerModule power = build.power;
+            power.lastProduction = power.lastRequest = power.lastStored = power.lastCapacity = 0f;
+            power.lastValid = false;
+
+            addMember(build);
+            refresh(build);
+        }
+    }
+
+    /** Moves a building from another graph to this one, keeping its cached contribution. */
+    private void move(Building build){
+        build.power.graph = this;
+        addMember(build);
+    }
+
+    private void addMember(Building build){
+        all.add(build);
+
+        if(build.block.outputsPower && build.block.consumesPower && !build.block.consumes.getPower().buffered){
+            producers.add(build);
+            consumers.add(build);
+        }else if(build.block.outputsPower && build.block.consumesPower){
+            batteries.add(build);
+        }else if(build.block.outputsPower){
+            producers.add(build);
+        }else if(build.block.consumesPower){
+            consumers.add(build);
+            if(build.block.consumes.hasPower() && build.block.consumes.getPower().buffered){
+                buffered.add(build);
             }
         }
+
+        PowerModule power = build.power;
+        producedRate += power.lastProduction;
+        neededRate += power.lastRequest;
+        batteryStored += power.lastStored;
+        batteryCapacity += power.lastCapacity;
+        distributeDirty = true;
+    }
+
+    private void clearMembers(){
+        all.clear();
+        producers.clear();
+        consumers.clear();
+        batteries.clear();
+        buffered.clear();
+        producedRate = neededRate = 0;
+        batteryStored = batteryCapacity = 0f;
+        distributeDirty = true;
+    }
+
+    private static boolean isBattery(Block block){
+        return block.outputsPower && block.consumesPower && block.consumes.hasPower() && block.consumes.getPower().buffered;
     }
 
     public void reflow(Building tile){
@@ -294,38 +411,90 @@ public class PowerGraph{
 
     /** Used for unit tests only. */
     public void removeList(Building build){
+        clearContribution(build);
         all.remove(build);
         producers.remove(build);
         consumers.remove(build);
         batteries.remove(build);
+        buffered.remove(build);
     }
 
-    /** Note that this does not actually remove the building from the graph;
-     * it creates *new* graphs that contain the correct buildings. */
+    /**
+     * Removes a building from this graph, and gives it a graph of its own.
+     * The remaining buildings are split into separate graphs during the next call to {@link #updateSplits()}.
+     */
     public void remove(Building tile){
+        removeList(tile);
+        new PowerGraph().add(tile);
+        checkSplit();
+    }
+
+    /**
+     * Marks this graph as possibly disconnected, after a building or link was removed.
+     * Checking is deferred, so that many removals in the same frame only cause one pass over the graph.
+     */
+    public void checkSplit(){
+        if(!splitQueued){
+            splitQueued = true;
+            splitQueue.add(this);
+        }
+    }
 
-        //go through all the connections of this tile
-        for(Building other : tile.getPowerConnections(outArray1)){
-            //a graph has already been assigned to this tile from a previous call, skip it
-            if(other.power.graph != this) continue;
+    /** Splits all graphs that lost a building or link since the last call into their connected parts. Called once per frame, and after a world is loaded. */
+    public static void updateSplits(){
+        for(int i = 0; i < splitQueue.size; i++){
+            PowerGraph graph = splitQueue.get(i);
+            graph.splitQueued = false;
+            graph.split();
+        }
+        splitQueue.clear();
+    }
+
+    /** Discards all pending splits. Called when the world is reset or a new one starts loading, as the queued graphs belong to the previous world. */
+    public static void clearSplits(){
+        for(int i = 0; i < splitQueue.size; i++){
+            splitQueue.get(i).splitQueued = false;
+        }
+        splitQueue.clear();
+    }
+
+    private void split(){
+        if(all.isEmpty()) return;
+
+        //find everything that is still connected to the first building
+        Building first = all.first();
+        queue.clear();
+        queue.addLast(first);
+        closedSet.clear();
+        closedSet.add(first.pos());
+        while(queue.size > 0){
+            Building child = queue.removeFirst();
+            for(Building next : child.getPowerConnections(outArray2)){
+                if(next.power.graph == this && closedSet.add(next.pos())){
+                    queue.addLast(next);
+                }
+            }
+        }
+
+        //the graph is still connected, nothing to do
+        if(closedSet.size == all.size) return;
+
+        splitMembers.clear();
+        splitMembers.addAll(all);
+
+        //move every other connected part to a new graph
+        for(Building build : splitMembers){
+            if(build.power.graph != this || closedSet.contains(build.pos())) continue;
 
-            //create graph for this branch
             PowerGraph graph = new PowerGraph();
-            graph.add(other);
-            //add to queue for BFS
+            graph.move(build);
             queue.clear();
-            queue.addLast(other);
+            queue.addLast(build);
             while(queue.size > 0){
-                //get child from queue
                 Building child = queue.removeFirst();
-                //add it to the new branch graph
-                graph.add(child);
-                //go through connections
                 for(Building next : child.getPowerConnections(outArray2)){
-                    //make sure it hasn't looped back, and that the new graph being assigned hasn't already been assigned
-                    //also skip closed tiles
-                    if(next != tile && next.power.graph != graph){
-                        graph.add(next);
+                    if(next.power.graph == this){
+                        graph.move(next);
                         queue.addLast(next);
                     }
                 }
@@ -333,6 +502,16 @@ public class PowerGraph{
             //update the graph once so direct consumers without any connected producer lose their power
             graph.update();
         }
+
+        //keep the part that contains the first building
+        clearMembers();
+        for(Building build : splitMembers){
+            if(build.power.graph == this){
+                addMember(build);
+            }
+        }
+        splitMembers.clear();
+        update();
     }
 
     private boolean otherConsumersAreValid(Building tile, Consume consumePower){
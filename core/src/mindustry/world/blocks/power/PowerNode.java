@@ -56,17 +56,9 @@ public class PowerNode extends PowerBlock{
                 power.links.removeValue(value);
                 if(valid) other.power.links.removeValue(entity.pos());
 
-                PowerGraph newgraph = new PowerGraph();
-
-                //reflow from this point, covering all tiles on this side
-                newgraph.reflow(entity);
-
-                if(valid && other.power.graph != newgraph){
-                    //create new graph for other end
-                    PowerGraph og = new PowerGraph();
-                    //reflow from other end
-                    og.reflow(other);
-                }
+                //the graph may now be split in two; this is checked once per frame
+                power.graph.checkSplit();
+                if(valid) other.power.graph.checkSplit();
             }else if(linkValid(entity, other) && valid && power.links.size < maxNodes){
 
                 if(!power.links.contains(other.pos())){
@@ -15,6 +15,11 @@ public class PowerModule extends BlockModule{
     public PowerGraph graph = new PowerGraph();
     public IntSeq links = new IntSeq();
 
+    /** Contribution of this building to the totals of its graph, as of its last update. Rates are per tick, before delta is applied. */
+    public float lastProduction, lastRequest, lastStored, lastCapacity;
+    /** Whether all non-power consumers of this building were valid during its last update. */
+    public boolean lastValid;
+
     @Override
     public void write(Writes write){
         write.s(links.size);
@@ -11,6 +11,7 @@ import arc.util.serialization.*;
 import arc.util.serialization.JsonValue.*;
 import mindustry.core.GameState.*;
 import mindustry.core.*;
+import mindustry.entities.*;
 import mindustry.game.EventType.*;
 import mindustry.game.*;
 import mindustry.gen.*;
@@ -220,12 +221,14 @@ public class ServerControl implements ApplicationListener{
                     Fi file = saveDirectory.child(fileName);
                     info("Autosaving...");
 
-                    try{
-                        SaveIO.save(file);
-                        info("Autosave completed.");
-                    }catch(Throwable e){
-                        err("Autosave failed.", e);
-                    }
+                    //compression and disk writes happen in the background, so clients do not freeze
+                    SaveIO.saveAsync(file, e -> {
+                        if(e == null){
+                            info("Autosave completed.");
+                        }else{
+                            err("Autosave failed.", e);
+                        }
+                    });
                 }
             }
         });
@@ -371,6 +374,7 @@ public class ServerControl implements ApplicationListener{
                 }
 
                 info("  @ FPS, @ MB used.", Core.graphics.getFramesPerSecond(), Core.app.getJavaHeap() / 1024 / 1024);
+                info("  Unit query cache: @% of @ queries hit.", (int)(UnitQueryCache.hitRate() * 100), UnitQueryCache.queries);
 
                 if(Groups.player.size() > 0){
                     info("  Players: @", Groups.player.size());
@@ -909,6 +913,18 @@ public class ServerControl implements ApplicationListener{
             }
         });
 
+        handler.register("pathfinder", "Display how long each pathfinding flow field took to converge.", arg -> {
+            if(state.isMenu()){
+                err("Not playing. Host first.");
+                return;
+            }
+
+            info("Flow fields (@ threads):", Config.pathfinderThreads.num() <= 0 ? Runtime.getRuntime().availableProcessors() : Config.pathfinderThreads.num());
+            for(var field : pathfinder.getFields()){
+                info("  &fi@&fr / @: @ ms", field.getClass().getSimpleName(), field.team().name, Strings.fixed(field.lastConvergeTime / 1000000f, 2));
+            }
+        });
+
         handler.register("gc", "Trigger a garbage collection. Testing only.", arg -> {
             int pre = (int)(Core.app.getJavaHeap() / 1024 / 1024);
             System.gc();
@@ -1023,6 +1039,12 @@ public class ServerControl implements ApplicationListener{
         currentLogFile.writeString(text + "\n", true);
     }
 
+    @Override
+    public void dispose(){
+        //autosaves are written on a daemon thread, so wait for pending ones before the process exits
+        SaveIO.finishSaves();
+    }
+
     private void toggleSocket(boolean on){
         if(on && socketThread == null){
             socketThread = new Thread(() -> {
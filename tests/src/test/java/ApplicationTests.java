@@ -1,27 +1,40 @@
 import arc.*;
 import arc.backend.headless.*;
+import arc.files.*;
 import arc.func.*;
 import arc.math.*;
 import arc.math.geom.*;
+import arc.math.geom.QuadTree.*;
 import arc.struct.*;
 import arc.util.*;
 import arc.util.serialization.*;
 import arc.util.serialization.JsonValue.*;
 import mindustry.*;
+import mindustry.ai.*;
 import mindustry.content.*;
 import mindustry.core.*;
 import mindustry.core.GameState.*;
 import mindustry.ctype.*;
+import mindustry.entities.*;
+import mindustry.entities.SpatialIndex.*;
 import mindustry.entities.units.*;
 import mindustry.game.*;
+import mindustry.game.Teams.*;
 import mindustry.gen.*;
 import mindustry.io.*;
+import mindustry.logic.*;
 import mindustry.maps.*;
 import mindustry.net.Net;
+import mindustry.net.ReceivedStates;
+import mindustry.net.SnapshotBaselines;
 import mindustry.type.*;
 import mindustry.world.*;
+import mindustry.world.blocks.payloads.*;
 import org.junit.jupiter.api.*;
 
+import java.io.*;
+import java.util.concurrent.*;
+
 import static mindustry.Vars.*;
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -235,6 +248,42 @@ public class ApplicationTests{
         assertTrue(state.teams.playerCores().size > 0);
     }
 
+    @Test
+    void saveAsync() throws InterruptedException{
+        world.loadMap(testMap);
+        Map map = state.map;
+        Fi file = saveDirectory.child("async.msav");
+
+        Throwable[] result = {null};
+        CountDownLatch done = new CountDownLatch(1);
+        SaveIO.saveAsync(file, e -> {
+            result[0] = e;
+            done.countDown();
+        });
+
+        assertTrue(done.await(10, TimeUnit.SECONDS), "Save did not complete.");
+        assertNull(result[0]);
+
+        //saving again keeps a copy of the previous file, and the file itself is only ever replaced
+        CountDownLatch again = new CountDownLatch(1);
+        SaveIO.saveAsync(file, e -> {
+            result[0] = e;
+            again.countDown();
+        });
+
+        assertTrue(again.await(10, TimeUnit.SECONDS), "Second save did not complete.");
+        assertNull(result[0]);
+        assertTrue(SaveIO.isSaveValid(file));
+        assertTrue(SaveIO.isSaveValid(SaveIO.backupFileFor(file)));
+
+        resetWorld();
+        SaveIO.load(file);
+
+        assertEquals(world.width(), map.width);
+        assertEquals(world.height(), map.height);
+        assertTrue(state.teams.playerCores().size > 0);
+    }
+
     void updateBlocks(int times){
         for(Tile tile : world.tiles){
             if(tile.build != null && tile.isCenter()){
@@ -379,6 +428,280 @@ public class ApplicationTests{
 
     }
 
+    @Test
+    void indexerBench(){
+        int size = 300;
+
+        //densely built map, split between two teams
+        world.loadGenerator(size, size, tiles -> {
+            tiles.fill();
+            for(Tile tile : tiles){
+                tile.setFloor(Blocks.stone.asFloor());
+            }
+
+            for(int x = 0; x < size - 1; x += 2){
+                for(int y = 0; y < size - 1; y += 2){
+                    if((x / 2 + y / 2) % 5 == 0){
+                        tiles.getn(x, y).setBlock(Blocks.titaniumWallLarge, x < size / 2 ? Team.sharded : Team.crux);
+                    }
+                }
+            }
+
+            for(Tile tile : tiles){
+                if(tile.block() == Blocks.air){
+                    tile.setBlock(Blocks.copperWall, tile.x < size / 2 ? Team.sharded : Team.crux);
+                }
+            }
+        });
+
+        Seq<Building> builds = new Seq<>();
+        for(Tile tile : world.tiles){
+            if(tile.build != null && tile.isCenter()) builds.add(tile.build);
+        }
+
+        int iterations = 10000;
+        Rand r = new Rand(0);
+        float[] found = new float[iterations];
+        int[] counted = new int[1];
+
+        Time.mark();
+        for(int i = 0; i < iterations; i++){
+            float x = r.random(size * tilesize), y = r.random(size * tilesize), range = r.random(tilesize * 30);
+            Building result = indexer.findEnemyTile(Team.sharded, x, y, range, b -> true);
+            found[i] = result == null ? -1f : result.dst(x, y) - result.hitSize() / 2f;
+        }
+        Log.info(Time.elapsed() + "ms for " + iterations + " enemy building queries on " + builds.size + " buildings");
+
+        Time.mark();
+        for(int i = 0; i < iterations; i++){
+            float x = r.random(size * tilesize), y = r.random(size * tilesize), range = r.random(tilesize * 30);
+            indexer.eachBlock(Team.sharded, x, y, range, b -> true, b -> counted[0] ++);
+        }
+        Log.info(Time.elapsed() + "ms for " + iterations + " radius queries, visiting " + counted[0] + " buildings");
+
+        //compare against a scan of every building
+        r.setSeed(0);
+        for(int i = 0; i < iterations; i++){
+            float x = r.random(size * tilesize), y = r.random(size * tilesize), range = r.random(tilesize * 30);
+
+            float closest = -1f;
+            for(Building build : builds){
+                float dst = build.dst(x, y) - build.hitSize() / 2f;
+                if(build.team == Team.crux && dst < range && (closest < 0f || dst < closest)) closest = dst;
+            }
+
+            assertEquals(closest, found[i], 0.001f);
+        }
+    }
+
+    @Test
+    void teamUnitIndex(){
+        world.loadMap(testMap);
+        state.set(State.playing);
+
+        Unit dagger = UnitTypes.dagger.spawn(Team.sharded, 100f, 100f);
+        Unit flare = UnitTypes.flare.spawn(Team.sharded, 120f, 100f);
+        state.teams.updateTeamStats();
+
+        TeamData data = Team.sharded.data();
+        assertEquals(2, data.units.size);
+        assertEquals(1, data.countType(UnitTypes.dagger));
+        assertEquals(1, data.countType(UnitTypes.flare));
+        assertTrue(state.teams.present.contains(data));
+
+        flare.team(Team.crux);
+        state.teams.updateTeamStats();
+
+        assertEquals(1, data.units.size);
+        assertEquals(0, data.countType(UnitTypes.flare));
+        assertEquals(1, Team.crux.data().countType(UnitTypes.flare));
+        assertEquals(1, Team.crux.data().unitCache(UnitTypes.flare).size);
+
+        //the unit grid follows units as they move
+        dagger.set(300f, 300f);
+        state.teams.updateTeamStats();
+
+        Seq<Unit> found = new Seq<>();
+        data.tree().intersect(290f, 290f, 20f, 20f, found::add);
+        assertEquals(Seq.with(dagger), found);
+
+        dagger.remove();
+        state.teams.updateTeamStats();
+
+        assertEquals(0, data.units.size);
+        assertEquals(0, data.countType(UnitTypes.dagger));
+        assertEquals(0, data.tree().size());
+    }
+
+    @Test
+    void payloadUnitCount(){
+        world.loadMap(testMap);
+        state.set(State.playing);
+
+        Unit carrier = UnitTypes.mega.spawn(Team.sharded, 100f, 100f);
+        TeamData data = Team.sharded.data();
+
+        //units inside blocks do not count
+        Unit dagger = UnitTypes.dagger.create(Team.sharded);
+        UnitPayload payload = new UnitPayload(dagger);
+        assertEquals(0, data.countType(UnitTypes.dagger));
+
+        //taken from a block by a carrier
+        ((Payloadc)carrier).addPayload(payload);
+        assertEquals(1, data.countType(UnitTypes.dagger));
+
+        assertTrue(((Payloadc)carrier).dropLastPayload());
+        assertTrue(dagger.isAdded());
+        assertEquals(1, data.countType(UnitTypes.dagger));
+
+        dagger.remove();
+        assertEquals(0, data.countType(UnitTypes.dagger));
+    }
+
+    @Test
+    void pathClusters(){
+        //three clusters wide, split down the middle by a wall with one gap
+        int size = PathClusters.clusterSize * 3, wallX = size / 2, gapY = size - 4;
+        Tiles tiles = world.resize(size, size);
+
+        world.beginMapLoad();
+        tiles.fill();
+        for(Tile tile : tiles){
+            tile.setFloor(Blocks.stone.asFloor());
+            if(tile.x == wallX && tile.y != gapY) tile.setBlock(Blocks.stoneWall);
+        }
+        world.endMapLoad();
+
+        Tile from = world.tile(2, 2), to = world.tile(size - 3, 2), gap = world.tile(wallX, gapY);
+        IntSeq route = new IntSeq();
+
+        assertTrue(pathfinder.getRoute(Team.sharded, Pathfinder.costGround, from, to, route), "No route through the gap.");
+        assertEquals(from.pos(), route.first());
+        assertEquals(to.pos(), route.peek());
+
+        float direct = pathCost(from, to), coarse = 0f;
+        assertTrue(direct > 0f);
+
+        for(int i = 0; i < route.size - 1; i++){
+            Tile a = world.tile(route.get(i)), b = world.tile(route.get(i + 1));
+
+            //every leg either crosses a cluster border or stays inside one cluster
+            assertTrue(Math.abs(a.x - b.x) + Math.abs(a.y - b.y) == 1 ||
+                (a.x / PathClusters.clusterSize == b.x / PathClusters.clusterSize && a.y / PathClusters.clusterSize == b.y / PathClusters.clusterSize),
+                "Waypoints " + a + " and " + b + " are not in the same cluster.");
+
+            float leg = pathCost(a, b);
+            assertTrue(leg >= 0f, "Waypoint " + b + " is not reachable from " + a);
+            coarse += leg;
+        }
+
+        //portals sit in the middle of border openings, so routes are close to, but not always as cheap as, full searches
+        assertTrue(coarse <= direct * 1.5f + PathClusters.clusterSize, "Route cost " + coarse + " is too far from A* cost " + direct);
+
+        //the position target finds the same route
+        IntSeq targetRoute = new IntSeq();
+        assertTrue(new Pathfinder.PositionTarget(new Vec2(to.worldx(), to.worldy())).getRoute(from, targetRoute));
+        assertEquals(route, targetRoute);
+
+        //routes inside one cluster go straight to the destination
+        assertTrue(pathfinder.getRoute(Team.sharded, Pathfinder.costGround, from, world.tile(5, 5), route));
+        assertEquals(2, route.size);
+
+        //walls are never reachable
+        assertFalse(pathfinder.getRoute(Team.sharded, Pathfinder.costGround, from, world.tile(wallX, 2), route));
+
+        //closing the gap invalidates the clusters around it
+        gap.setBlock(Blocks.stoneWall);
+        pathfinder.updateTile(gap);
+
+        assertFalse(pathfinder.getRoute(Team.sharded, Pathfinder.costGround, from, to, route), "Route found through a closed gap.");
+        assertTrue(route.isEmpty());
+        assertTrue(pathCost(from, to) < 0f);
+
+        gap.setAir();
+        pathfinder.updateTile(gap);
+
+        assertTrue(pathfinder.getRoute(Team.sharded, Pathfinder.costGround, from, to, route), "No route after reopening the gap.");
+    }
+
+    /** @return the cost of the A* path between two tiles, or -1 if there is none. */
+    static float pathCost(Tile from, Tile to){
+        Seq<Tile> path = Astar.pathfind(from, to, ApplicationTests::groundCost, tile -> !tile.solid());
+        if(path.isEmpty() && from != to) return -1f;
+
+        float cost = 0f;
+        for(Tile tile : path){
+            cost += groundCost(tile);
+        }
+        return cost;
+    }
+
+    /** @return the ground cost of moving onto a tile on a map of stone and static walls; tiles next to walls cost extra, see Pathfinder.costGround. */
+    static float groundCost(Tile tile){
+        for(int i = 0; i < 4; i++){
+            Tile other = tile.nearby(i);
+            if(other != null && other.solid()) return 3f;
+        }
+        return 1f;
+    }
+
+    @Test
+    void snapshotBaselines() throws IOException{
+        //enough entities for dozens of packets per sync tick
+        int entities = 600, perPacket = 8, length = 40, ticks = 3;
+        SnapshotBaselines server = new SnapshotBaselines();
+        ReceivedStates client = new ReceivedStates();
+        Rand rand = new Rand(0);
+
+        byte[][] states = new byte[entities][length];
+        for(byte[] state : states) rand.nextBytes(state);
+
+        int deltas = 0;
+        for(int tick = 0; tick < ticks; tick++){
+            server.beginTick();
+            int sequence = -1;
+
+            for(int id = 0; id < entities; id++){
+                byte[] state = states[id] = states[id].clone();
+                state[rand.random(length - 1)] ++;
+
+                if(id % perPacket == 0) sequence = server.begin();
+                //one packet of the second tick is lost
+                boolean lost = tick == 1 && id / perPacket == 3;
+
+                byte[] base = server.baseline(id), received;
+                if(base != null){
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    SnapshotBaselines.writeDelta(new DataOutputStream(out), base, state);
+                    received = SnapshotBaselines.readDelta(new DataInputStream(new ByteArrayInputStream(out.toByteArray())), length, client.get(id, server.baselineSequence(id)));
+                    deltas ++;
+                }else{
+                    received = state.clone();
+                }
+
+                assertArrayEquals(state, received, "Entity " + id + " was decoded incorrectly on tick " + tick);
+                server.sent(id, state);
+
+                if(!lost){
+                    client.add(id, sequence, received);
+                    if(id % perPacket == perPacket - 1 || id == entities - 1) client.received(sequence);
+                }
+            }
+
+            server.acknowledge(client.latest, client.acks());
+        }
+
+        //every packet of a tick is acknowledged, so every entity is written as a delta after the first tick
+        assertEquals(entities * (ticks - 1), deltas);
+
+        //full snapshots are not acknowledged, so switching modes forgets all baselines
+        server.setDelta(false);
+        server.setDelta(true);
+        for(int id = 0; id < entities; id++){
+            assertNull(server.baseline(id));
+        }
+    }
+
     @Test
     void conveyorBench(){
         int[] itemsa = {0};
@@ -427,6 +750,83 @@ public class ApplicationTests{
         assertNotEquals(0, itemsa[0]);
     }
 
+    @Test
+    void logicBench(){
+        String code = String.join("\n",
+            "set i 0",
+            "set sum 0",
+            "op add i i 1",
+            "op mul t i 3",
+            "op mod t t 7",
+            "op add sum sum t",
+            "jump 2 lessThan i 1000",
+            "end"
+        );
+
+        LAssembler asm = LAssembler.assemble(code, LExecutor.maxInstructions);
+
+        LExecutor compiled = new LExecutor();
+        compiled.load(asm);
+
+        //the assembler keeps the generic instructions, which are interpreted as before
+        LExecutor interpreted = new LExecutor();
+        interpreted.load(asm);
+        interpreted.instructions = asm.instructions;
+
+        int steps = 5_000_000;
+
+        //warmup
+        for(int i = 0; i < steps; i++){
+            compiled.runOnce();
+            interpreted.runOnce();
+        }
+
+        Time.mark();
+        for(int i = 0; i < steps; i++){
+            interpreted.runOnce();
+        }
+        Log.info(Time.elapsed() + "ms to interpret " + steps + " instructions");
+
+        Time.mark();
+        for(int i = 0; i < steps; i++){
+            compiled.runOnce();
+        }
+        Log.info(Time.elapsed() + "ms to run " + steps + " compiled instructions");
+
+        for(int i = 0; i < compiled.vars.length; i++){
+            if(i == LExecutor.varTime) continue;
+            assertEquals(interpreted.vars[i].numval, compiled.vars[i].numval, compiled.vars[i].name);
+        }
+    }
+
+    @Test
+    void logicRollback(){
+        LExecutor exec = new LExecutor();
+        exec.load(String.join("\n",
+            "op add i i 1",
+            "print i",
+            "jump 0 lessThan i 100",
+            "end"
+        ), LExecutor.maxInstructions);
+
+        for(int i = 0; i < 10; i++) exec.runOnce();
+
+        double[] before = new double[exec.vars.length];
+        for(int i = 0; i < before.length; i++) before[i] = exec.vars[i].numval;
+        String text = exec.textBuffer.toString();
+
+        //a buffered run that read outdated state is discarded, so running again gives the same result as running on the main thread
+        assertEquals(50, exec.runConcurrent(50));
+        exec.rollback();
+
+        for(int i = 0; i < before.length; i++){
+            if(i == LExecutor.varTime || i == LExecutor.varTick) continue;
+            assertEquals(before[i], exec.vars[i].numval, exec.vars[i].name);
+        }
+        assertEquals(text, exec.textBuffer.toString());
+        assertTrue(exec.effects.isEmpty());
+    }
+
     @Test
     void load77Save(){
         resetWorld();
@@ -464,6 +864,97 @@ public class ApplicationTests{
         assertEquals(500, world.height());
     }
 
+    @Test
+    void bulletGroupBench(){
+        int amount = 50000;
+
+        Seq<Bullet> bullets = new Seq<>();
+        for(int i = 0; i < amount; i++){
+            bullets.add(Bullet.create());
+        }
+        bullets.shuffle();
+
+        //linear search removal, as groups used to do it
+        Seq<Bullet> linear = new Seq<>(false, 32, Bullet.class);
+        EntityGroup<Bullet> group = new EntityGroup<>(Bullet.class, false, false);
+
+        Time.mark();
+        for(Bullet bullet : bullets) linear.add(bullet);
+        for(Bullet bullet : bullets) linear.remove(bullet, true);
+        float linearTime = Time.elapsed();
+
+        Time.mark();
+        for(Bullet bullet : bullets) group.add(bullet);
+        for(Bullet bullet : bullets) group.remove(bullet);
+        float groupTime = Time.elapsed();
+
+        Log.info("Added and removed @ bullets: @ms with linear search, @ms with tracked slots", amount, linearTime, groupTime);
+        assertTrue(linear.isEmpty());
+        assertTrue(group.isEmpty());
+    }
+
+    @Test
+    void spatialIndexBench(){
+        int amount = 5000, rebuilds = 200, queries = 100000;
+        float size = 4000f;
+
+        Seq<QuadTreeObject> objects = new Seq<>(false, amount, QuadTreeObject.class);
+        Rand rand = new Rand(0);
+        for(int i = 0; i < amount; i++){
+            float x = rand.random(size), y = rand.random(size), hitSize = rand.random(2f, 8f);
+            objects.add(out -> out.setCentered(x, y, hitSize, hitSize));
+        }
+
+        SpatialIndex<QuadTreeObject> tree = new QuadTreeIndex<>(), grid = new SpatialGrid<>(32f), movingGrid = new MovingGrid<>(32f);
+        long[] found = new long[3];
+        int i = 0;
+
+        for(SpatialIndex<QuadTreeObject> index : new SpatialIndex[]{tree, grid, movingGrid}){
+            int slot = i++;
+            index.resize(0, 0, size, size);
+
+            Time.mark();
+            for(int j = 0; j < rebuilds; j++){
+                index.build(objects);
+            }
+            float buildTime = Time.elapsed();
+
+            rand.setSeed(1);
+            Time.mark();
+            for(int j = 0; j < queries; j++){
+                index.intersect(rand.random(size), rand.random(size), 80f, 80f, o -> found[slot] ++);
+            }
+            float queryTime = Time.elapsed();
+
+            Log.info("@: @ms for @ rebuilds, @ms for @ queries", index.getClass().getSimpleName(), buildTime, rebuilds, queryTime, queries);
+        }
+
+        assertEquals(found[0], found[1], "Grid and quadtree must find the same objects.");
+        assertEquals(found[0], found[2], "Moving grid and quadtree must find the same objects.");
+
+        //objects that move after the index is built are tested at their current position
+        Vec2 pos = new Vec2(100f, 100f);
+        Seq<QuadTreeObject> moving = new Seq<>();
+        moving.add(out -> out.setCentered(pos.x, pos.y, 8f, 8f));
+
+        for(SpatialIndex<QuadTreeObject> index : new SpatialIndex[]{tree, grid, movingGrid}){
+            pos.set(100f, 100f);
+            index.build(moving);
+            pos.add(12f, 0f);
+
+            Seq<QuadTreeObject> out = new Seq<>();
+            index.intersect(new Rect(90f, 90f, 8f, 20f), out);
+            assertTrue(out.isEmpty(), index.getClass().getSimpleName() + " found an object at its old position.");
+            index.intersect(new Rect(110f, 90f, 8f, 20f), out);
+            assertEquals(1, out.size, index.getClass().getSimpleName() + " missed an object at its new position.");
+        }
+
+        //snapshot queries only see the hitboxes captured when the grid was built
+        Seq<QuadTreeObject> snapshot = new Seq<>();
+        ((SpatialGrid<QuadTreeObject>)grid).intersectSnapshot(new Rect(90f, 90f, 8f, 20f), snapshot);
+        assertEquals(1, snapshot.size);
+    }
+
     @Test
     void arrayIterators(){
         Seq<String> arr = Seq.with("a", "b" , "c", "d", "e", "f");
@@ -1,11 +1,16 @@
 import arc.util.*;
 import arc.util.io.*;
+import mindustry.content.*;
 import mindustry.game.*;
 import mindustry.io.*;
+import mindustry.world.*;
 import org.junit.jupiter.api.*;
 
+import java.io.*;
 import java.nio.*;
+import java.util.zip.*;
 
+import static mindustry.Vars.*;
 import static org.junit.jupiter.api.Assertions.*;
 
 public class IOTests{
@@ -69,4 +74,67 @@ public class IOTests{
         }});
         Log.info(str2);
     }
+
+    @Test
+    void saveBench() throws IOException{
+        ApplicationTests.launchApplication();
+        logic.reset();
+
+        int size = 500;
+        world.loadGenerator(size, size, tiles -> {
+            tiles.fill();
+            for(Tile tile : tiles){
+                tile.setFloor((tile.x / 20 + tile.y / 30) % 3 == 0 ? Blocks.sand.asFloor() : Blocks.stone.asFloor());
+                if((tile.x * 3 + tile.y) % 11 == 0) tile.setOverlay(Blocks.oreCopper);
+            }
+
+            for(int x = 0; x < size; x++){
+                for(int y = 0; y < size; y += 4){
+                    tiles.getn(x, y).setBlock(x % 8 == 0 ? Blocks.copperWall : Blocks.conveyor, Team.sharded, 0);
+                }
+            }
+        });
+
+        int[] blocks = new int[size * size];
+        for(int i = 0; i < blocks.length; i++){
+            Tile tile = world.tiles.geti(i);
+            blocks[i] = tile.blockID() | tile.floorID() << 16;
+        }
+
+        for(SaveVersion version : new SaveVersion[]{SaveIO.getSaveWriter(4), SaveIO.getVersion()}){
+            boolean chunked = version == SaveIO.getVersion();
+
+            Time.mark();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try(DataOutputStream stream = new DataOutputStream(chunked ? SaveIO.container(bytes) : new FastDeflaterOutputStream(bytes))){
+                stream.write(SaveIO.header);
+                stream.writeInt(version.version);
+                version.write(stream);
+            }
+            Log.info("Save version @: @ms to write, @ KB", version.version, Time.elapsed(), bytes.size() / 1024);
+
+            Time.mark();
+            SaveIO.load(new InflaterInputStream(new ByteArrayInputStream(bytes.toByteArray())), world.context);
+            Log.info("Save version @: @ms to load", version.version, Time.elapsed());
+
+            assertEquals(size, world.width());
+            assertEquals(size, world.height());
+            for(int i = 0; i < blocks.length; i++){
+                Tile tile = world.tiles.geti(i);
+                assertEquals(blocks[i], tile.blockID() | tile.floorID() << 16, "Tile mismatch at " + tile.x + ", " + tile.y);
+            }
+        }
+
+        //the network map is written uncompressed, but must be readable by the same reader
+        ByteArrayOutputStream network = new ByteArrayOutputStream();
+        try(DataOutputStream stream = new DataOutputStream(network)){
+            SaveIO.getVersion().writeNetworkMap(stream);
+        }
+        SaveIO.getVersion().readMap(new DataInputStream(new ByteArrayInputStream(network.toByteArray())), world.context);
+
+        for(int i = 0; i < blocks.length; i++){
+            Tile tile = world.tiles.geti(i);
+            assertEquals(blocks[i], tile.blockID() | tile.floorID() << 16, "Network tile mismatch at " + tile.x + ", " + tile.y);
+        }
+    }
 }
@@ -2,9 +2,11 @@ package power;
 
 import arc.*;
 import arc.math.*;
+import arc.struct.*;
 import arc.util.*;
 import mindustry.*;
 import mindustry.core.*;
+import mindustry.gen.*;
 import mindustry.world.*;
 import mindustry.world.blocks.power.*;
 import mindustry.world.blocks.power.PowerGenerator.*;
@@ -140,5 +142,53 @@ public class PowerTests extends PowerTestFixture{
                 assertFalse(consumePower.valid(consumerTile.build));
             }
         }
+
+        /** Merges a large line of buildings into one graph, then removes every tenth building in a single frame. */
+        @Test
+        void graphMergeSplitBench(){
+            int size = 5000;
+            Block block = createFakeProducerBlock(1f);
+            Seq<Building> builds = new Seq<>();
+
+            for(int i = 0; i < size; i++){
+                Building build = createFakeTile(i, 0, block).build;
+                ((GeneratorBuild)build).productionEfficiency = 1f;
+                build.power.graph.refresh(build);
+                if(i > 0){
+                    build.proximity.add(builds.peek());
+                    builds.peek().proximity.add(build);
+                }
+                builds.add(build);
+            }
+
+            Time.mark();
+            builds.each(Building::updatePowerGraph);
+            Log.info("Time to merge @ buildings: @ms", size, Time.elapsed());
+
+            assertSame(builds.first().power.graph, builds.peek().power.graph);
+            assertEquals(size * Time.delta, builds.first().power.graph.getPowerProduced(), 0.01f);
+
+            Time.mark();
+            for(int i = 0; i < size; i += 10){
+                Building build = builds.get(i);
+                build.powerGraphRemoved();
+                for(Building other : build.proximity){
+                    other.proximity.remove(build, true);
+                }
+            }
+            PowerGraph.updateSplits();
+            Log.info("Time to split into @ graphs: @ms", size / 10, Time.elapsed());
+
+            for(int i = 0; i < size; i += 10){
+                PowerGraph graph = builds.get(i + 1).power.graph;
+                for(int j = i + 2; j < Math.min(i + 10, size); j++){
+                    assertSame(graph, builds.get(j).power.graph);
+                }
+                if(i + 11 < size){
+                    assertNotSame(graph, builds.get(i + 11).power.graph);
+                }
+                assertEquals(9f * Time.delta, graph.getPowerProduced(), 0.01f);
+            }
+        }
     }
 }